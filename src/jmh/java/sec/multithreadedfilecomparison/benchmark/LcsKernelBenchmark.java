@@ -0,0 +1,100 @@
+package sec.multithreadedfilecomparison.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import sec.multithreadedfilecomparison.helper.BitParallelLcsEngine;
+import sec.multithreadedfilecomparison.helper.ComparisonMode;
+import sec.multithreadedfilecomparison.helper.SimilarityEngine;
+import sec.multithreadedfilecomparison.helper.ThresholdedLcsEngine;
+import sec.multithreadedfilecomparison.helper.TokenDictionary;
+import sec.multithreadedfilecomparison.helper.TokenLcsEngine;
+import sec.multithreadedfilecomparison.helper.WavefrontLcsEngine;
+import sec.multithreadedfilecomparison.model.PreparedContent;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to score one pair with the engines the Comparator can use, from
+ * 1 KB to 1 MB per file, for both alphabets and a range of similarities.
+ * The line and token engines include tokenising both files. Each call gets fresh prepared contents, so per-file indexes (match masks
+ * etc) are built inside the measurement, as for a file's first pair.
+ * The quadratic-space reference implementation is in ReferenceLcsBenchmark,
+ * since it cannot reach these sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LcsKernelBenchmark {
+
+    @Param({"1024", "16384", "131072", "1048576"})
+    public int fileLength;
+
+    @Param({"SOURCE", "RANDOM"})
+    public SyntheticCorpus.Alphabet alphabet;
+
+    @Param({"0.2", "0.6", "0.95"})
+    public double overlap;
+
+    @Param({"bit-parallel", "thresholded-0.5", "wavefront", "line", "token"})
+    public String engineName;
+
+    private char[] file1;
+    private char[] file2;
+    private SimilarityEngine engine;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        file1 = SyntheticCorpus.generate(alphabet, fileLength, 42);
+        file2 = SyntheticCorpus.mutate(file1, overlap, 43);
+        pool = null;
+
+        switch (engineName) {
+            case "bit-parallel":
+                engine = new BitParallelLcsEngine();
+                break;
+            case "thresholded-0.5":
+                engine = new ThresholdedLcsEngine(0.5, new BitParallelLcsEngine());
+                break;
+            case "wavefront":
+                // Tile every pair, however small, to show where splitting starts to pay
+                pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+                engine = new WavefrontLcsEngine(new BitParallelLcsEngine(), 0, pool);
+                break;
+            case "line":
+                engine = new TokenLcsEngine(ComparisonMode.LINE, new TokenDictionary());
+                break;
+            case "token":
+                engine = new TokenLcsEngine(ComparisonMode.TOKEN, new TokenDictionary());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown engine " + engineName);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public double calcSimilarity() {
+        return engine.calcSimilarity(new PreparedContent(file1), new PreparedContent(file2));
+    }
+}
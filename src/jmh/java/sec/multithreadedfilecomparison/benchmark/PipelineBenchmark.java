@@ -0,0 +1,131 @@
+package sec.multithreadedfilecomparison.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import sec.multithreadedfilecomparison.controller.Comparator;
+import sec.multithreadedfilecomparison.controller.ComparisonListener;
+import sec.multithreadedfilecomparison.controller.ComparisonProgress;
+import sec.multithreadedfilecomparison.controller.FileScanner;
+import sec.multithreadedfilecomparison.controller.ResultsLogger;
+import sec.multithreadedfilecomparison.controller.RuntimeConfig;
+import sec.multithreadedfilecomparison.model.ResultIndex;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end throughput of a whole session, File Scanner -> Comparator ->
+ * Results Logger, over a generated corpus on disk. One operation is one
+ * session; the "pairs" counter reports completed pairs per second.
+ * Varying comparisonThreads shows how the comparison pool scales, and
+ * tileKb compares pairing each new file with all earlier ones (0) against
+ * cache-sized tiles.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+
+    @Param({"40", "120"})
+    public int numFiles;
+
+    @Param({"1024", "8192"})
+    public int fileLength;
+
+    @Param({"1", "2", "4"})
+    public int comparisonThreads;
+
+    @Param({"0", "1024"})
+    public int tileKb;
+
+    private Path corpusDirectory;
+    private Path outputFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        corpusDirectory = Files.createTempDirectory("mfc-bench-corpus");
+        SyntheticCorpus.writeCorpus(corpusDirectory, numFiles, fileLength, SyntheticCorpus.Alphabet.SOURCE, 42);
+        outputFile = Files.createTempFile("mfc-bench-results", ".csv");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(corpusDirectory)) {
+            files.sorted(java.util.Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+        Files.deleteIfExists(outputFile);
+    }
+
+    /**
+     * Pairs completed, reported by JMH as a rate alongside sessions per second.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class PairCounter {
+        public long pairs;
+    }
+
+    @Benchmark
+    public long session(PairCounter counter) throws IOException, InterruptedException {
+        RuntimeConfig config = new RuntimeConfig();
+        config.setComparisonThreads(comparisonThreads);
+
+        FileScanner fileScanner = new FileScanner(corpusDirectory.toFile(), Set.of("txt"));
+        config.configure(fileScanner);
+        fileScanner.start();
+
+        // The sinks append, so start each session's results afresh
+        Files.deleteIfExists(outputFile);
+        ResultsLogger resultsLogger = new ResultsLogger(outputFile.toString());
+        config.configure(resultsLogger);
+        resultsLogger.start();
+
+        SessionListener listener = new SessionListener();
+        Comparator comparator = new Comparator(fileScanner, resultsLogger, listener);
+        config.configure(comparator);
+        comparator.setTiledAllPairs(tileKb * 1024L);
+        comparator.start();
+
+        listener.finished.await();
+        resultsLogger.stopAndWait();
+
+        long completed = comparator.getProgress().getCompleted();
+        counter.pairs += completed;
+        return completed;
+    }
+
+    private static class SessionListener implements ComparisonListener {
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        @Override
+        public void comparisonsStarted(ComparisonProgress progress, ResultIndex results) { }
+
+        @Override
+        public void jobCompleted(int file1Id, int file2Id, double similarity) { }
+
+        @Override
+        public void comparisonsFinished() {
+            finished.countDown();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package sec.multithreadedfilecomparison.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sec.multithreadedfilecomparison.helper.BitParallelLcsEngine;
+import sec.multithreadedfilecomparison.helper.Helpers;
+import sec.multithreadedfilecomparison.helper.LinearSpaceLcsEngine;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Helpers.calcSimilarity (the original full-table LCS) against the linear
+ * space and bit-parallel kernels, at sizes the full table can still hold
+ * (it needs 5 bytes per cell).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReferenceLcsBenchmark {
+
+    @Param({"1024", "4096"})
+    public int fileLength;
+
+    @Param({"SOURCE", "RANDOM"})
+    public SyntheticCorpus.Alphabet alphabet;
+
+    private String file1Str;
+    private String file2Str;
+    private char[] file1;
+    private char[] file2;
+
+    @Setup
+    public void setUp() {
+        file1 = SyntheticCorpus.generate(alphabet, fileLength, 42);
+        file2 = SyntheticCorpus.mutate(file1, 0.6, 43);
+        file1Str = new String(file1);
+        file2Str = new String(file2);
+    }
+
+    @Benchmark
+    public double helpersCalcSimilarity() {
+        return Helpers.calcSimilarity(file1Str, file2Str);
+    }
+
+    @Benchmark
+    public int linearSpaceLcsLength() {
+        return LinearSpaceLcsEngine.lcsLength(file1, file2);
+    }
+
+    @Benchmark
+    public int bitParallelLcsLength() {
+        return BitParallelLcsEngine.lcsLength(file1, file2);
+    }
+}
@@ -0,0 +1,107 @@
+package sec.multithreadedfilecomparison.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Generates reproducible file contents for the benchmarks.
+ * Two alphabets: SOURCE strings together identifiers, keywords and
+ * punctuation the way source code does (a skewed, repetitive alphabet),
+ * RANDOM draws uniformly from printable ASCII (the worst case for caches of
+ * matches). Related files are made by keeping a fraction of a base file's
+ * characters and replacing the rest, so similarity can be dialled in.
+ */
+public class SyntheticCorpus {
+
+    public enum Alphabet { SOURCE, RANDOM }
+
+    private static final String[] SOURCE_TOKENS = {
+            "public", "private", "static", "final", "void", "int", "long", "double", "return",
+            "if", "else", "for", "while", "new", "this", "null", "true", "false", "class",
+            "result", "file", "index", "count", "value", "length", "buffer", "queue", "item",
+            "(", ")", "{", "}", "[", "]", ";", ",", ".", "=", "==", "+", "-", "*", "<", ">",
+            "0", "1", "ii", "jj", "// TODO", "\"text\""
+    };
+    private static final String[] SOURCE_SEPARATORS = { " ", " ", " ", "\n", "\n    ", "\n        " };
+
+    private SyntheticCorpus() { }
+
+    /**
+     * @param alphabet Alphabet
+     * @param length Number of characters
+     * @param seed Random Seed
+     * @return Contents
+     */
+    public static char[] generate(Alphabet alphabet, int length, long seed) {
+        Random random = new Random(seed);
+        if (alphabet == Alphabet.RANDOM) {
+            char[] content = new char[length];
+            for (int ii=0; ii<length; ii++) {
+                content[ii] = randomPrintable(random);
+            }
+            return content;
+        }
+
+        StringBuilder sb = new StringBuilder(length + 16);
+        while (sb.length() < length) {
+            sb.append(SOURCE_TOKENS[random.nextInt(SOURCE_TOKENS.length)]);
+            sb.append(SOURCE_SEPARATORS[random.nextInt(SOURCE_SEPARATORS.length)]);
+        }
+        sb.setLength(length);
+        return sb.toString().toCharArray();
+    }
+
+    /**
+     * A variant of a file: each character is kept with probability overlap,
+     * otherwise replaced by a random printable one. The LCS similarity of the
+     * two is then at least around overlap.
+     * @param base Original Contents
+     * @param overlap Fraction of characters kept (0 to 1)
+     * @param seed Random Seed
+     * @return Contents of the same length
+     */
+    public static char[] mutate(char[] base, double overlap, long seed) {
+        Random random = new Random(seed);
+        char[] content = base.clone();
+        for (int ii=0; ii<content.length; ii++) {
+            if (random.nextDouble() >= overlap) {
+                content[ii] = randomPrintable(random);
+            }
+        }
+        return content;
+    }
+
+    /**
+     * Write numFiles .txt files into a directory, in families of up to
+     * FAMILY_SIZE variants of a common base, so a run produces a spread of
+     * high and low similarity pairs.
+     * @param directory Directory (must exist)
+     * @param numFiles Number of files
+     * @param fileLength Characters per file
+     * @param alphabet Alphabet
+     * @param seed Random Seed
+     */
+    public static void writeCorpus(Path directory, int numFiles, int fileLength, Alphabet alphabet, long seed)
+            throws IOException {
+        final int FAMILY_SIZE = 5;
+        char[] base = null;
+        for (int ii=0; ii<numFiles; ii++) {
+            if (ii % FAMILY_SIZE == 0) {
+                base = generate(alphabet, fileLength, seed + ii);
+            }
+
+            char[] content = mutate(base, 0.5 + 0.1 * (ii % FAMILY_SIZE), seed ^ ii);
+            Files.write(
+                    directory.resolve("file" + ii + ".txt"),
+                    new String(content).getBytes(StandardCharsets.UTF_8)
+            );
+        }
+    }
+
+    private static char randomPrintable(Random random) {
+        return (char)(' ' + random.nextInt('~' - ' ' + 1));
+    }
+}
@@ -1,6 +1,7 @@
 package sec.multithreadedfilecomparison;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
@@ -10,7 +11,12 @@ import javafx.stage.DirectoryChooser;
 import javafx.stage.Stage;
 import sec.multithreadedfilecomparison.controller.Comparator;
 import sec.multithreadedfilecomparison.controller.FileScanner;
+import sec.multithreadedfilecomparison.controller.PairScoreCache;
+import sec.multithreadedfilecomparison.controller.ResultClusterer;
 import sec.multithreadedfilecomparison.controller.ResultsLogger;
+import sec.multithreadedfilecomparison.controller.RuntimeConfig;
+import sec.multithreadedfilecomparison.controller.SessionCheckpoint;
+import sec.multithreadedfilecomparison.helper.ComparisonMode;
 import sec.multithreadedfilecomparison.model.ComparisonResult;
 
 import java.io.File;
@@ -28,7 +34,10 @@ public class FileComparisonApplication extends Application {
     private Text jobText = new Text("0/0 Comparisons");
     private FileScanner fileScanner;
     private Comparator comparator;
+    private GuiComparisonListener guiListener;
     private ResultsLogger resultsLogger;
+    private ResultClusterer resultClusterer;
+    private ChoiceBox<ComparisonMode> modeChoice = new ChoiceBox<ComparisonMode>();
 
     @Override
     public void start(Stage stage) throws IOException {
@@ -39,11 +48,14 @@ public class FileComparisonApplication extends Application {
         Button compareBtn = new Button("Compare...");
         Button stopBtn = new Button("Stop");
         Button clearBtn = new Button("Clear");
-        ToolBar toolBar = new ToolBar(compareBtn, new Separator(), stopBtn, clearBtn);
+        modeChoice.getItems().setAll(ComparisonMode.values());
+        modeChoice.setValue(ComparisonMode.CHARACTER);
+        ToolBar toolBar = new ToolBar(
+                compareBtn, new Label("by"), modeChoice, new Separator(), stopBtn, clearBtn);
 
         // Set up button event handlers
         compareBtn.setOnAction(event -> crossCompare(stage));
-        stopBtn.setOnAction(event -> stopComparison());
+        stopBtn.setOnAction(event -> stopComparison(null));
         clearBtn.setOnAction(event -> clearView());
 
         // Initialise progressbar
@@ -87,6 +99,15 @@ public class FileComparisonApplication extends Application {
         stage.show();
     }
 
+    /**
+     * Stop any running comparison when the window closes, so the results
+     * file is flushed and closed.
+     */
+    @Override
+    public void stop() {
+        stopComparison(null);
+    }
+
     /**
      * Invoke threads for doing file comparisons.
      * @param stage Stage
@@ -99,70 +120,172 @@ public class FileComparisonApplication extends Application {
 
         // Validate chosen directory
         if (directory != null) {
-
-            // Reset
-            clearView();
-            stopComparison();
-            System.out.println("Comparing files within " + directory + "...");
-
-            // Init table list of comparison results and point GUI at it
-            List<ComparisonResult> newResults = new ArrayList<ComparisonResult>();
-            resultTable.getItems().setAll(newResults);
-
-            // Create the File Scanner
-            Set<String> suffixes = Set.of(
-                    "txt", "md", "java", "cs", "c", "cpp", "py", "bat", "sh"
-            );
-            fileScanner = new FileScanner(directory, suffixes);
-            fileScanner.start();
-
-            // Create the Results Logger
-            Date date = new Date();
-            SimpleDateFormat formatter = new SimpleDateFormat("ddMMyyyyHHmmss");
-            resultsLogger = new ResultsLogger("results-" + formatter.format(date) + ".csv");
-            resultsLogger.start();
-
-            // Create the Comparator
-            comparator = new Comparator(
-                    fileScanner,
-                    resultsLogger,
-                    progressBar,
-                    jobText,
-                    resultTable
-            );
-            comparator.start();
+            // Reset (stop first, so the old session's last updates are not shown)
+            stopComparison(() -> startComparison(directory));
         }
     }
 
     /**
-     * Stops all threads invoked for file comparison.
+     * Start comparing the files within a directory.
+     * @param directory Directory
      */
-    private void stopComparison() {
-        System.out.println("Stopping threads...");
-
-        // Kill the File Scanner
-        if (fileScanner != null) {
-            try {
-                fileScanner.stop();
-            } catch (IllegalStateException e) {}
-            fileScanner = null;
+    private void startComparison(File directory) {
+        clearView();
+        System.out.println("Comparing files within " + directory + "...");
+
+        // Offer to resume an unfinished session over this directory
+        ComparisonMode mode = modeChoice.getValue();
+        File checkpointFile = SessionCheckpoint.defaultFileFor(directory, mode);
+        if (checkpointFile.length() > 0 && !confirmResume(directory)) {
+            if (!checkpointFile.delete()) {
+                System.out.println("Could not delete session checkpoint " + checkpointFile);
+            }
         }
 
-        // Kill the Results Logger
-        if (resultsLogger != null) {
-            try {
-                resultsLogger.stop();
-            } catch (IllegalStateException e) {}
-            resultsLogger = null;
+        // Init table list of comparison results and point GUI at it
+        List<ComparisonResult> newResults = new ArrayList<ComparisonResult>();
+        resultTable.getItems().setAll(newResults);
+
+        // Size the threads and queues for this machine
+        RuntimeConfig config = RuntimeConfig.fromSystemProperties();
+        System.out.println(config.describeTopology());
+
+        // Create the File Scanner
+        Set<String> suffixes = Set.of(
+                "txt", "md", "java", "cs", "c", "cpp", "py", "bat", "sh"
+        );
+        fileScanner = new FileScanner(directory, suffixes);
+        config.configure(fileScanner);
+        fileScanner.start();
+
+        // Resume an unfinished session over this directory, or start a new one
+        Date date = new Date();
+        SimpleDateFormat formatter = new SimpleDateFormat("ddMMyyyyHHmmss");
+        String resultsFileName = "results-" + formatter.format(date) + ".csv";
+        ResultsLogger.OutputFormat resultsFormat = ResultsLogger.OutputFormat.CSV;
+        SessionCheckpoint checkpoint = null;
+        try {
+            checkpoint = SessionCheckpoint.open(
+                    checkpointFile, directory, resultsFileName, resultsFormat.name());
+            resultsFileName = checkpoint.getResultsFileName();
+            resultsFormat = ResultsLogger.OutputFormat.valueOf(checkpoint.getResultsFormat());
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Could not open session checkpoint: " + e.getMessage());
+        }
+
+        // Create the Results Logger
+        resultsLogger = new ResultsLogger(resultsFileName, resultsFormat);
+        config.configure(resultsLogger);
+        resultsLogger.start();
+
+        // Group similar files into clusters alongside the results, if asked to
+        if (config.isClustering()) {
+            resultClusterer = new ResultClusterer(
+                    ResultClusterer.defaultFileFor(resultsFileName), config.getClusterThreshold());
+            resultClusterer.start();
         }
 
-        // Kill the Comparator
-        if (comparator != null) {
-            try {
-                comparator.stop();
-            } catch (IllegalStateException e) {}
-            comparator = null;
+        // Create the Comparator
+        guiListener = new GuiComparisonListener(progressBar, jobText, resultTable);
+        if (resultClusterer != null) {
+            guiListener.showClusters(resultClusterer);
+        }
+        comparator = new Comparator(
+                fileScanner,
+                resultsLogger,
+                guiListener
+        );
+        if (checkpoint != null) {
+            comparator.setCheckpoint(checkpoint);
         }
+        config.configure(comparator);
+        comparator.setComparisonMode(mode);
+        comparator.setResultClusterer(resultClusterer);
+        if (config.isScoreCache()) {
+            comparator.setScoreCache(new PairScoreCache(
+                    PairScoreCache.defaultFileFor(mode.getScoreKind()),
+                    mode.getScoreKind(),
+                    config.getScoreCacheEntries(),
+                    PairScoreCache.DEFAULT_MAX_AGE_DAYS
+            ));
+        }
+        comparator.start();
+    }
+
+    /**
+     * Ask whether to carry on with an unfinished session over a directory.
+     * @param directory Directory
+     * @return true to resume it, false to start afresh
+     */
+    private boolean confirmResume(File directory) {
+        ButtonType resume = new ButtonType("Resume");
+        ButtonType startAfresh = new ButtonType("Start Afresh");
+        Alert aa = new Alert(Alert.AlertType.CONFIRMATION, "", resume, startAfresh);
+        aa.setHeaderText("Unfinished session found");
+        aa.setContentText("Comparisons within " + directory + " were stopped before they finished. " +
+                "Resume them, appending to the same results file, or start afresh?");
+        return aa.showAndWait().orElse(startAfresh) == resume;
+    }
+
+    /**
+     * Stops all threads invoked for file comparison.
+     * The view stops updating straight away; the threads are stopped on a
+     * background thread, as the Comparator may take a while to save its
+     * checkpoint, and then the given action is run on the FX application thread.
+     * @param then Action to run once stopped, or null
+     */
+    private void stopComparison(Runnable then) {
+        // Stop updating the view
+        if (guiListener != null) {
+            guiListener.stop();
+            guiListener = null;
+        }
+
+        Comparator oldComparator = comparator;
+        FileScanner oldFileScanner = fileScanner;
+        ResultsLogger oldResultsLogger = resultsLogger;
+        ResultClusterer oldResultClusterer = resultClusterer;
+        comparator = null;
+        fileScanner = null;
+        resultsLogger = null;
+        resultClusterer = null;
+
+        Thread stopper = new Thread(() -> {
+            System.out.println("Stopping threads...");
+
+            // Kill the Comparator, letting it commit its checkpoint while the Results Logger still runs
+            if (oldComparator != null) {
+                try {
+                    oldComparator.stopAndWait();
+                } catch (IllegalStateException | InterruptedException e) {}
+            }
+
+            // Kill the File Scanner
+            if (oldFileScanner != null) {
+                try {
+                    oldFileScanner.stop();
+                } catch (IllegalStateException e) {}
+            }
+
+            // Kill the Results Logger
+            if (oldResultsLogger != null) {
+                try {
+                    oldResultsLogger.stop();
+                } catch (IllegalStateException e) {}
+            }
+
+            // Kill the Result Clusterer
+            if (oldResultClusterer != null) {
+                try {
+                    oldResultClusterer.stop();
+                } catch (IllegalStateException e) {}
+            }
+
+            if (then != null) {
+                Platform.runLater(then);
+            }
+        }, "session-stopper-thread");
+        stopper.start();
     }
 
     /**
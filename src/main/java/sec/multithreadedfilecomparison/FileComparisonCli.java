@@ -0,0 +1,295 @@
+package sec.multithreadedfilecomparison;
+
+import sec.multithreadedfilecomparison.controller.Comparator;
+import sec.multithreadedfilecomparison.controller.ComparisonListener;
+import sec.multithreadedfilecomparison.controller.ComparisonProgress;
+import sec.multithreadedfilecomparison.controller.FileScanner;
+import sec.multithreadedfilecomparison.controller.LshCandidateFilter;
+import sec.multithreadedfilecomparison.controller.PairScoreCache;
+import sec.multithreadedfilecomparison.controller.ResultClusterer;
+import sec.multithreadedfilecomparison.controller.ResultsLogger;
+import sec.multithreadedfilecomparison.controller.RuntimeConfig;
+import sec.multithreadedfilecomparison.helper.ComparisonMode;
+import sec.multithreadedfilecomparison.model.ComparisonResult;
+import sec.multithreadedfilecomparison.model.FileItem;
+import sec.multithreadedfilecomparison.model.ResultIndex;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless entry point: runs the same File Scanner -> Comparator -> Results
+ * Logger pipeline as the GUI, from the command line, with nothing from
+ * JavaFX needed on the classpath. Exits with status 1 if the Comparator or
+ * Results Logger dies before the comparisons finish, and 2 on bad usage.
+ *
+ * Usage: FileComparisonCli <directory> [options]
+ *   --suffixes txt,java,...        File suffixes to compare (default: the GUI's list)
+ *   --mode character|line|token    What the LCS runs over (default: character)
+ *   --threshold 0.5                Only log pairs at or above this similarity
+ *   --threads N                    Comparison threads (default: one per core)
+ *   --stored-content MB            Keep contents off the heap, mapping up to MB of them
+ *   --output results.csv           Results file (default: results-ddMMyyyyHHmmss.csv)
+ *   --format csv|binary            Results format (default: csv)
+ *   --score-cache FILE             Reuse and update a pair-score cache
+ *   --tile-kb N                    Compare in cache-sized tiles of N KB of contents
+ *   --top N                        Print the N most similar pairs at the end (default: 10)
+ *   --similar-to FILE              Also print the files most similar to FILE
+ *   --clusters 0.8                 Group files similar at or above this into clusters,
+ *                                  written to <output>-clusters.csv
+ *   --lsh-jaccard 0.4              Only compare pairs the MinHash/LSH filter finds at
+ *                                  about this shingle Jaccard similarity or more
+ *                                  (not an LCS similarity; see LshCandidateFilter)
+ *   --lsh-estimates FILE           Write the pairs the filter skipped, with their
+ *                                  estimated Jaccard similarity, to FILE
+ */
+public class FileComparisonCli {
+
+    private static final Set<String> DEFAULT_SUFFIXES = Set.of(
+            "txt", "md", "java", "cs", "c", "cpp", "py", "bat", "sh"
+    );
+    private static final long PROGRESS_INTERVAL_MS = 1000;
+    private static final int DEFAULT_TOP_PAIRS = 10;
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length == 0 || args[0].startsWith("--")) {
+            usage("A directory is required");
+            return;
+        }
+
+        File directory = new File(args[0]);
+        Set<String> suffixes = DEFAULT_SUFFIXES;
+        ComparisonMode mode = ComparisonMode.CHARACTER;
+        Double threshold = null;
+        Integer threads = null;
+        Integer storedContentMb = null;
+        String outputFileName = null;
+        ResultsLogger.OutputFormat format = ResultsLogger.OutputFormat.CSV;
+        String scoreCacheFile = null;
+        Long tileKb = null;
+        int topPairs = DEFAULT_TOP_PAIRS;
+        String similarTo = null;
+        Double clusterThreshold = null;
+        LshCandidateFilter candidateFilter = null;
+        String lshEstimatesFile = null;
+
+        try {
+            for (int ii=1; ii<args.length; ii+=2) {
+                if (ii + 1 >= args.length) {
+                    usage("Missing value for " + args[ii]);
+                    return;
+                }
+
+                String value = args[ii+1];
+                switch (args[ii]) {
+                    case "--suffixes":
+                        suffixes = new HashSet<String>();
+                        for (String suffix : value.split(",")) {
+                            suffixes.add(suffix.trim());
+                        }
+                        break;
+                    case "--mode":
+                        mode = ComparisonMode.valueOf(value.toUpperCase());
+                        break;
+                    case "--threshold":
+                        threshold = Double.parseDouble(value);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(value);
+                        break;
+                    case "--stored-content":
+                        storedContentMb = Integer.parseInt(value);
+                        break;
+                    case "--output":
+                        outputFileName = value;
+                        break;
+                    case "--format":
+                        format = ResultsLogger.OutputFormat.valueOf(value.toUpperCase());
+                        break;
+                    case "--score-cache":
+                        scoreCacheFile = value;
+                        break;
+                    case "--tile-kb":
+                        tileKb = Long.parseLong(value);
+                        break;
+                    case "--top":
+                        topPairs = Integer.parseInt(value);
+                        break;
+                    case "--similar-to":
+                        similarTo = value;
+                        break;
+                    case "--clusters":
+                        clusterThreshold = Double.parseDouble(value);
+                        break;
+                    case "--lsh-jaccard":
+                        candidateFilter = new LshCandidateFilter(Double.parseDouble(value));
+                        break;
+                    case "--lsh-estimates":
+                        lshEstimatesFile = value;
+                        break;
+                    default:
+                        usage("Unknown option " + args[ii]);
+                        return;
+                }
+            }
+
+        } catch (IllegalArgumentException e) { // includes NumberFormatException
+            usage("Invalid value: " + e.getMessage());
+            return;
+        }
+
+        if (lshEstimatesFile != null && candidateFilter == null) {
+            usage("--lsh-estimates needs --lsh-jaccard");
+            return;
+        }
+        if (!directory.isDirectory()) {
+            usage(directory + " is not a directory");
+            return;
+        }
+        if (outputFileName == null) {
+            String extension = format == ResultsLogger.OutputFormat.BINARY ? ".bin" : ".csv";
+            outputFileName = "results-" + new SimpleDateFormat("ddMMyyyyHHmmss").format(new Date()) + extension;
+        }
+
+        RuntimeConfig config = RuntimeConfig.fromSystemProperties();
+        if (threads != null) {
+            config.setComparisonThreads(threads);
+        }
+        if (storedContentMb != null) {
+            config.setStoredContentMb(storedContentMb);
+        }
+        System.out.println("Comparing files within " + directory + " into " + outputFileName + "...");
+        System.out.println(config.describeTopology());
+
+        // Same pipeline as the GUI
+        FileScanner fileScanner = new FileScanner(directory, suffixes);
+        config.configure(fileScanner);
+        fileScanner.start();
+
+        ResultsLogger resultsLogger = new ResultsLogger(outputFileName, format);
+        config.configure(resultsLogger);
+        resultsLogger.start();
+
+        ResultClusterer resultClusterer = null;
+        if (clusterThreshold != null) {
+            resultClusterer = new ResultClusterer(ResultClusterer.defaultFileFor(outputFileName), clusterThreshold);
+            resultClusterer.start();
+        }
+
+        ConsoleListener listener = new ConsoleListener();
+        Comparator comparator = new Comparator(fileScanner, resultsLogger, listener);
+        config.configure(comparator);
+        comparator.setComparisonMode(mode);
+        if (threshold != null) {
+            comparator.setSimilarityThreshold(threshold, false);
+        }
+        comparator.setResultClusterer(resultClusterer);
+        if (tileKb != null) {
+            comparator.setTiledAllPairs(tileKb * 1024);
+        }
+        if (candidateFilter != null) {
+            comparator.setCandidateFilter(candidateFilter, lshEstimatesFile);
+        }
+        if (scoreCacheFile != null) {
+            comparator.setScoreCache(new PairScoreCache(
+                    new File(scoreCacheFile),
+                    mode.getScoreKind(),
+                    config.isScoreCache() ? config.getScoreCacheEntries() : PairScoreCache.DEFAULT_MAX_ENTRIES,
+                    PairScoreCache.DEFAULT_MAX_AGE_DAYS
+            ));
+        }
+        comparator.start();
+
+        // Poll progress until done, or until a thread has died without finishing
+        while (!listener.awaitFinished(PROGRESS_INTERVAL_MS)) {
+            if ((!comparator.isAlive() || !resultsLogger.isAlive()) && !listener.awaitFinished(0)) {
+                System.out.println("ERROR: the " + (comparator.isAlive() ? "Results Logger" : "Comparator") +
+                        " stopped before the comparisons finished");
+                System.exit(1);
+            }
+            System.out.println("Progress: " + comparator.getProgress().describe() +
+                    (resultClusterer == null ? "" : ", " + resultClusterer.getNumClusters() + " cluster(s)"));
+        }
+        resultsLogger.stopAndWait();
+        System.out.println("Done: " + resultsLogger.getResultsWritten() + " results written to " + outputFileName);
+        if (resultClusterer != null) {
+            resultClusterer.stopAndWait();
+            System.out.println("Clusters written to " + ResultClusterer.defaultFileFor(outputFileName));
+        }
+        printMostSimilar(comparator.getResultIndex(), topPairs, similarTo);
+    }
+
+    /**
+     * Print the top pairs overall and, if asked, the files most similar to one file.
+     * @param index Result Index
+     * @param topPairs Number of pairs to print
+     * @param similarTo File Name, or null
+     */
+    private static void printMostSimilar(ResultIndex index, int topPairs, String similarTo) {
+        if (topPairs > 0) {
+            System.out.println("Most similar pairs:");
+            for (ComparisonResult result : index.topPairs(topPairs)) {
+                System.out.println(String.format("  %.4f  %s", result.getSimilarity(), result.getComparisonPair()));
+            }
+        }
+
+        if (similarTo != null) {
+            FileItem fileItem = index.findFile(similarTo);
+            if (fileItem == null) {
+                System.out.println("No results for " + similarTo);
+                return;
+            }
+            System.out.println("Most similar to " + similarTo + ":");
+            for (ComparisonResult result : index.mostSimilarTo(fileItem, ResultIndex.DEFAULT_PER_FILE_CAPACITY)) {
+                System.out.println(String.format("  %.4f  %s",
+                        result.getSimilarity(), result.getComparisonPair().getFile2Name()));
+            }
+        }
+    }
+
+    private static void usage(String problem) {
+        System.out.println(problem);
+        System.out.println("Usage: FileComparisonCli <directory> [--suffixes txt,java] " +
+                "[--mode character|line|token] [--threshold 0.5] " +
+                "[--threads N] [--stored-content MB] [--output results.csv] [--format csv|binary] [--score-cache FILE] " +
+                "[--tile-kb N] [--top N] [--similar-to FILE] [--clusters 0.8] " +
+                "[--lsh-jaccard 0.4] [--lsh-estimates FILE]");
+        System.exit(2);
+    }
+
+    /**
+     * Lets main() wait for the end; progress is polled from the Comparator.
+     */
+    private static class ConsoleListener implements ComparisonListener {
+
+        private final CountDownLatch finished;
+
+        public ConsoleListener() {
+            this.finished = new CountDownLatch(1);
+        }
+
+        @Override
+        public void comparisonsStarted(ComparisonProgress progress, ResultIndex results) { }
+
+        @Override
+        public void jobCompleted(int file1Id, int file2Id, double similarity) { }
+
+        @Override
+        public void comparisonsFinished() {
+            finished.countDown();
+        }
+
+        /**
+         * @param timeoutMs Longest to wait
+         * @return Whether the comparisons have finished
+         */
+        public boolean awaitFinished(long timeoutMs) throws InterruptedException {
+            return finished.await(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package sec.multithreadedfilecomparison;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.scene.control.Alert;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.TableView;
+import javafx.scene.text.Text;
+import sec.multithreadedfilecomparison.controller.ComparisonListener;
+import sec.multithreadedfilecomparison.controller.ComparisonProgress;
+import sec.multithreadedfilecomparison.controller.ResultClusterer;
+import sec.multithreadedfilecomparison.model.ComparisonResult;
+import sec.multithreadedfilecomparison.model.ResultIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shows the Comparator's progress in the view: the job count, the progress
+ * bar, and a table of the most similar pairs.
+ * Nothing is done on the comparison threads; a timer on the FX application
+ * thread polls the Comparator's progress and result index, at most
+ * FRAMES_PER_SECOND times a second. The table holds the TABLE_CAPACITY most
+ * similar pairs in the index, highest first, and is replaced in one change
+ * per frame whenever the index has changed. With a Result Clusterer, the
+ * job count is followed by the number of clusters found so far.
+ */
+public class GuiComparisonListener implements ComparisonListener {
+
+    private static final double TABLE_MIN_SIMILARITY = 0.5;
+    private static final int TABLE_CAPACITY = 1000;
+    private static final int FRAMES_PER_SECOND = 10;
+    private ProgressBar guiProgressBar;
+    private Text guiJobText;
+    private TableView<ComparisonResult> guiTable;
+    private volatile ComparisonProgress progress;
+    private volatile ResultIndex results;
+    private volatile ResultClusterer clusterer;
+    private final AnimationTimer frameTimer;
+    private long shownDone;
+    private long shownVersion;
+
+    /**
+     * Create the listener and start its timer. Call on the FX application thread.
+     * @param guiProgressBar Progress Bar
+     * @param guiJobText Job Count Text
+     * @param guiTable Results Table
+     */
+    public GuiComparisonListener(ProgressBar guiProgressBar, Text guiJobText, TableView<ComparisonResult> guiTable) {
+        this.guiProgressBar = guiProgressBar;
+        this.guiJobText = guiJobText;
+        this.guiTable = guiTable;
+        this.progress = null;
+        this.results = null;
+        this.clusterer = null;
+        this.shownDone = -1;
+        this.shownVersion = -1;
+        this.frameTimer = new AnimationTimer() {
+            private final long frameNanos = 1_000_000_000L / FRAMES_PER_SECOND;
+            private long lastFrame = 0;
+
+            @Override
+            public void handle(long now) {
+                if (now - lastFrame >= frameNanos) {
+                    lastFrame = now;
+                    applyUpdates();
+                }
+            }
+        };
+        this.frameTimer.start();
+    }
+
+    /**
+     * Show how many clusters a Result Clusterer has found.
+     * @param clusterer Result Clusterer
+     */
+    public void showClusters(ResultClusterer clusterer) {
+        this.clusterer = clusterer;
+    }
+
+    @Override
+    public void comparisonsStarted(ComparisonProgress progress, ResultIndex results) {
+        this.progress = progress;
+        this.results = results;
+    }
+
+    @Override
+    public void jobCompleted(int file1Id, int file2Id, double similarity) { }
+
+    @Override
+    public void comparisonsFinished() {
+        Platform.runLater(() -> {
+            stop();
+            Alert aa = new Alert(Alert.AlertType.INFORMATION);
+            aa.setContentText("Comparisons completed. See table for high-similarity results.");
+            aa.show();
+        });
+    }
+
+    /**
+     * Apply anything still pending and stop the timer. Call on the FX application thread.
+     */
+    public void stop() {
+        frameTimer.stop();
+        applyUpdates();
+    }
+
+    /**
+     * Bring the view up to date with everything recorded since the last frame.
+     */
+    private void applyUpdates() {
+        ComparisonProgress current = progress;
+        if (current != null && current.getDone() != shownDone) {
+            shownDone = current.getDone();
+            double eta = current.getEtaSeconds();
+            ResultClusterer currentClusterer = clusterer;
+            guiJobText.setText(shownDone + "/" + current.getExpectedTotal() + " Comparisons" +
+                    (eta < 0 ? "" : String.format(" (%.0fs left)", eta)) +
+                    (currentClusterer == null ? "" : ", " + currentClusterer.getNumClusters() + " Clusters"));
+            guiProgressBar.setProgress(current.getFractionDone());
+        }
+
+        ResultIndex index = results;
+        if (index == null || index.getVersion() == shownVersion) {
+            return;
+        }
+
+        shownVersion = index.getVersion();
+        List<ComparisonResult> shown = new ArrayList<ComparisonResult>();
+        for (ComparisonResult result : index.topPairs(TABLE_CAPACITY)) {
+            if (result.getSimilarity() <= TABLE_MIN_SIMILARITY) {
+                break; // most similar first, so the rest are lower
+            }
+            shown.add(result);
+        }
+
+        guiTable.getItems().setAll(shown);
+    }
+}
@@ -0,0 +1,201 @@
+package sec.multithreadedfilecomparison.controller;
+
+import sec.multithreadedfilecomparison.helper.BinaryResultsReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Writes results in the compact binary format read by BinaryResultsReader.
+ * Each file name is stored once, in the block where it first appears, and
+ * given an id; records are then fixed-width (id1, id2, float similarity).
+ * Blocks are deflate-compressed. Appending to an existing file carries on
+ * with the ids already in it, after dropping any last block cut short. The file's ids are looked up by name once
+ * per session file id, and kept in an array by that id from then on.
+ */
+public class BinaryResultSink implements ResultSink {
+
+    private static final int BLOCK_RECORDS = 16 * 1024;
+    private final FileOutputStream out;
+    private final DataOutputStream fileOut;
+    private final FileNameTable fileNames;
+    private final Map<String, Integer> dictionary;
+    private int[] binaryIds;
+    private final List<String> newNames;
+    private final int[] ids1;
+    private final int[] ids2;
+    private final float[] similarities;
+    private final Deflater deflater;
+    private int count;
+    private long length;
+
+    public BinaryResultSink(String outputFileName, FileNameTable fileNames) throws IOException {
+        File file = new File(outputFileName);
+        if (file.length() > 0 && file.length() < BinaryResultsReader.HEADER_SIZE) {
+            truncate(file, 0); // the header itself was cut short
+        }
+        boolean existing = file.length() > 0;
+        this.fileNames = fileNames;
+        this.binaryIds = new int[0];
+        this.dictionary = new HashMap<String, Integer>();
+        if (existing) {
+            long completeLength;
+            try (BinaryResultsReader reader = new BinaryResultsReader(outputFileName)) {
+                reader.readRemainingBlocks();
+                List<String> names = reader.getNames();
+                for (int ii=0; ii<names.size(); ii++) {
+                    dictionary.put(names.get(ii), ii);
+                }
+                completeLength = reader.getCompleteLength();
+            }
+
+            // New blocks must follow the last complete one, or they could not be read
+            if (completeLength < file.length()) {
+                System.out.println("Dropping " + (file.length() - completeLength) +
+                        " bytes of a block cut short at the end of " + outputFileName);
+                truncate(file, completeLength);
+            }
+        }
+
+        this.out = new FileOutputStream(file, true);
+        this.fileOut = new DataOutputStream(out);
+        this.newNames = new ArrayList<String>();
+        this.ids1 = new int[BLOCK_RECORDS];
+        this.ids2 = new int[BLOCK_RECORDS];
+        this.similarities = new float[BLOCK_RECORDS];
+        this.deflater = new Deflater(Deflater.BEST_SPEED);
+        this.count = 0;
+        this.length = file.length();
+
+        if (!existing) {
+            fileOut.writeInt(BinaryResultsReader.MAGIC);
+            fileOut.writeInt(BinaryResultsReader.VERSION);
+            length += BinaryResultsReader.HEADER_SIZE;
+        }
+    }
+
+    @Override
+    public void write(int file1Id, int file2Id, double similarity) throws IOException {
+        ids1[count] = binaryIdFor(file1Id);
+        ids2[count] = binaryIdFor(file2Id);
+        similarities[count] = (float)similarity;
+        count++;
+
+        if (count == BLOCK_RECORDS) {
+            writeBlock();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeBlock();
+        fileOut.flush();
+    }
+
+    @Override
+    public void sync() throws IOException {
+        flush();
+        out.getFD().sync();
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        deflater.end();
+        fileOut.close();
+    }
+
+    /**
+     * The id in this file of a session file id, given out on first sight.
+     */
+    private int binaryIdFor(int fileId) {
+        if (fileId >= binaryIds.length) {
+            int oldLength = binaryIds.length;
+            binaryIds = Arrays.copyOf(binaryIds, Math.max(fileId + 1, oldLength * 2));
+            Arrays.fill(binaryIds, oldLength, binaryIds.length, -1);
+        }
+        if (binaryIds[fileId] < 0) {
+            binaryIds[fileId] = idFor(fileNames.getName(fileId));
+        }
+        return binaryIds[fileId];
+    }
+
+    private int idFor(String name) {
+        Integer id = dictionary.get(name);
+        if (id == null) {
+            id = dictionary.size();
+            dictionary.put(name, id);
+            newNames.add(name);
+        }
+
+        return id;
+    }
+
+    /**
+     * Write the pending names and records as one compressed block:
+     * [int raw length][int compressed length][deflated bytes], where the raw
+     * bytes are [int #names][UTF names...][int #records][(int, int, float)...].
+     */
+    private void writeBlock() throws IOException {
+        if (count == 0 && newNames.isEmpty()) {
+            return;
+        }
+
+        ByteArrayOutputStream rawBytes = new ByteArrayOutputStream(16 + count * BinaryResultsReader.RECORD_SIZE);
+        DataOutputStream raw = new DataOutputStream(rawBytes);
+        raw.writeInt(newNames.size());
+        for (String name : newNames) {
+            raw.writeUTF(name);
+        }
+        raw.writeInt(count);
+        for (int ii=0; ii<count; ii++) {
+            raw.writeInt(ids1[ii]);
+            raw.writeInt(ids2[ii]);
+            raw.writeFloat(similarities[ii]);
+        }
+        raw.flush();
+
+        byte[] input = rawBytes.toByteArray();
+        byte[] compressed = new byte[input.length + 64];
+        deflater.reset();
+        deflater.setInput(input);
+        deflater.finish();
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+        }
+
+        fileOut.writeInt(input.length);
+        fileOut.writeInt(compressedLength);
+        fileOut.write(compressed, 0, compressedLength);
+        length += BinaryResultsReader.BLOCK_HEADER_SIZE + compressedLength;
+
+        newNames.clear();
+        count = 0;
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+        }
+    }
+}
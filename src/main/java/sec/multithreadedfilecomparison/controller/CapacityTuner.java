@@ -0,0 +1,108 @@
+package sec.multithreadedfilecomparison.controller;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The self-adjusting capacity of a bounded buffer between a floor and a
+ * ceiling, from how its producers and consumers have been waiting.
+ * Every TUNE_WINDOW_MS it looks back at the last window:
+ *  - producers blocked on a full buffer AND consumers waited on an empty one:
+ *    the work arrives in bursts the buffer is too shallow to absorb, so the
+ *    capacity doubles;
+ *  - producers never blocked and the buffer never got past a quarter full:
+ *    the capacity halves, back towards the floor, to hold less in memory.
+ * Only one side waiting means that side is simply slower, and a deeper
+ * buffer would not help, so the capacity is left alone.
+ * With the ceiling equal to the floor the capacity never changes.
+ * Not thread-safe: use it under the buffer's own lock.
+ */
+public class CapacityTuner {
+
+    private static final long TUNE_WINDOW_MS = 500;
+    private final int minCapacity;
+    private final int maxCapacity;
+    private int capacity;
+    private int numRetunes;
+    private long windowStart;
+    private long producerWaitNanos;
+    private long consumerWaitNanos;
+    private int peakSize;
+
+    public CapacityTuner(int capacity, int maxCapacity) {
+        if (capacity < 1 || maxCapacity < capacity) {
+            throw new IllegalArgumentException("Need 1 <= capacity <= maxCapacity");
+        }
+
+        this.minCapacity = capacity;
+        this.maxCapacity = maxCapacity;
+        this.capacity = capacity;
+        this.numRetunes = 0;
+        this.windowStart = System.nanoTime();
+        this.producerWaitNanos = 0;
+        this.consumerWaitNanos = 0;
+        this.peakSize = 0;
+    }
+
+    public boolean isAutoTuned() {
+        return maxCapacity > minCapacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getMaxCapacity() {
+        return maxCapacity;
+    }
+
+    public int getNumRetunes() {
+        return numRetunes;
+    }
+
+    public void producerWaited(long nanos) {
+        producerWaitNanos += nanos;
+    }
+
+    public void consumerWaited(long nanos) {
+        consumerWaitNanos += nanos;
+    }
+
+    /**
+     * Note the buffer's size after an item went in.
+     * @param size Items held
+     */
+    public void added(int size) {
+        peakSize = Math.max(peakSize, size);
+    }
+
+    /**
+     * Adjust the capacity from the last window's waiting, if a window has passed.
+     * @param size Items held now
+     * @return Whether the capacity changed (so blocked producers should look again)
+     */
+    public boolean retuneIfDue(int size) {
+        long now = System.nanoTime();
+        if (!isAutoTuned() || now - windowStart < TimeUnit.MILLISECONDS.toNanos(TUNE_WINDOW_MS)) {
+            return false;
+        }
+
+        int newCapacity = capacity;
+        if (producerWaitNanos > 0 && consumerWaitNanos > 0) {
+            newCapacity = Math.min(maxCapacity, capacity * 2);
+        } else if (producerWaitNanos == 0 && peakSize <= capacity / 4) {
+            newCapacity = Math.max(minCapacity, capacity / 2);
+        }
+
+        boolean changed = newCapacity != capacity;
+        if (changed) {
+            capacity = newCapacity;
+            numRetunes++;
+        }
+
+        windowStart = now;
+        producerWaitNanos = 0;
+        consumerWaitNanos = 0;
+        peakSize = size;
+        return changed;
+    }
+}
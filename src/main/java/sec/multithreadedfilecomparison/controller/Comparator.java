@@ -1,20 +1,38 @@
 package sec.multithreadedfilecomparison.controller;
 
-import javafx.application.Platform;
-import javafx.scene.control.Alert;
-import javafx.scene.control.ProgressBar;
-import javafx.scene.control.TableView;
-import javafx.scene.text.Text;
-import sec.multithreadedfilecomparison.helper.Helpers;
+import sec.multithreadedfilecomparison.helper.BitParallelLcsEngine;
+import sec.multithreadedfilecomparison.helper.ComparisonMode;
+import sec.multithreadedfilecomparison.helper.SimilarityEngine;
+import sec.multithreadedfilecomparison.helper.ThresholdedLcsEngine;
+import sec.multithreadedfilecomparison.helper.TokenDictionary;
+import sec.multithreadedfilecomparison.helper.TokenLcsEngine;
+import sec.multithreadedfilecomparison.helper.WavefrontLcsEngine;
 import sec.multithreadedfilecomparison.model.ComparisonPair;
 import sec.multithreadedfilecomparison.model.ComparisonResult;
 import sec.multithreadedfilecomparison.model.FileItem;
+import sec.multithreadedfilecomparison.model.FileMetadata;
+import sec.multithreadedfilecomparison.model.PreparedContent;
+import sec.multithreadedfilecomparison.model.ResultIndex;
 
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class's responsibility is to:
@@ -22,38 +40,277 @@ import java.util.concurrent.TimeUnit;
  * submitted to a thread pool for similarity processing.
  * It should do this without creating any redundant combinations, like (a,b) & (b,a)
  * (i.e. combinations that have already been submitted to the pool).
+ * Pairs are generated lazily, one new file's pairs at a time, and only as
+ * fast as the pool gets through them: at most maxJobsInFlight jobs are
+ * queued or running at once. Small pairs are batched into one job each.
+ * In tiled mode, files are instead grouped into blocks as they arrive, and
+ * each time a block fills, its pairs with every block so far are submitted
+ * one tile (block x block) per job, so a tile's files stay in cache while
+ * they are compared with each other.
  */
 public class Comparator implements Runnable {
 
+    public static final long DEFAULT_PARALLEL_PAIR_CELLS = 1L << 34;
     private static final String THREAD_NAME = "comparator-thread";
-    private static final int NUM_COMPARISON_THREADS = 8;
+    private static final long DEFAULT_CACHE_BUDGET = 256L * 1024 * 1024;
+    private static final long CHECKPOINT_INTERVAL_SECS = 30;
+    private static final int DEFAULT_JOBS_PER_THREAD = 32;
+    private static final long SMALL_PAIR_CELLS = 1L << 20;
+    private static final long BATCH_CELLS = 1L << 24;
+    private static final int MAX_BATCH_PAIRS = 256;
+    private static final int MAX_BLOCK_FILES = 64;
     private Thread thread;
-    private Object mutex;
     private List<FileItem> fileHistory;
+    private long tileBytes;
+    private List<Integer> blockStarts;
+    private long openBlockBytes;
     private FileScanner fileProducer;
     private ResultsLogger logger;
-    private ProgressBar guiProgressBar;
-    private Text guiJobText;
-    private TableView<ComparisonResult> guiTable;
-    private ExecutorService exService;
-    private int comparisonJobsComplete;
+    private ComparisonListener listener;
+    private CostAwareExecutor exService;
+    private int numComparisonThreads;
+    private int maxJobsInFlight;
+    private Semaphore jobSlots;
+    private long jobMemoryBudget;
+    private long parallelPairCells;
+    private ForkJoinPool pairPool;
+    private SimilarityEngine similarityEngine;
+    private ComparisonMode comparisonMode;
+    private final TokenDictionary tokenDictionary;
+    private PreparedContentCache preparedCache;
+    private Map<Integer, AtomicInteger> pendingJobs;
+    private volatile boolean scanComplete;
+    private LshCandidateFilter candidateFilter;
+    private String estimatesFileName;
+    private Writer estimatesWriter;
+    private ThresholdedLcsEngine thresholdedEngine;
+    private boolean logExactForAll;
+    private volatile SessionCheckpoint checkpoint;
+    private Map<Integer, Integer> manifestNumbers;
+    private PairScoreCache scoreCache;
+    private long pairsConsidered;
+    private long pairsSkipped;
+    private final ComparisonProgress progress;
+    private final ResultIndex resultIndex;
+    private ResultClusterer resultClusterer;
+    private DuplicateGroups duplicateGroups;
 
     public Comparator(
             FileScanner producer,
             ResultsLogger logger,
-            ProgressBar guiProgressBar,
-            Text guiJobText,
-            TableView<ComparisonResult> guiTable
+            ComparisonListener listener
+    ) {
+        this(producer, logger, listener, new BitParallelLcsEngine());
+    }
+
+    public Comparator(
+            FileScanner producer,
+            ResultsLogger logger,
+            ComparisonListener listener,
+            SimilarityEngine similarityEngine
     ) {
         this.fileHistory = new ArrayList<FileItem>();
+        this.tileBytes = 0;
+        this.blockStarts = new ArrayList<Integer>();
+        this.openBlockBytes = 0;
         this.fileProducer = producer;
         this.logger = logger;
-        this.guiProgressBar = guiProgressBar;
-        this.guiJobText = guiJobText;
-        this.guiTable = guiTable;
-        this.mutex = new Object();
+        this.listener = listener;
         this.exService = null;
-        this.comparisonJobsComplete = 0;
+        this.numComparisonThreads = Runtime.getRuntime().availableProcessors();
+        this.maxJobsInFlight = 0;
+        this.jobSlots = null;
+        this.jobMemoryBudget = Runtime.getRuntime().maxMemory() / 4;
+        this.parallelPairCells = DEFAULT_PARALLEL_PAIR_CELLS;
+        this.pairPool = null;
+        this.similarityEngine = similarityEngine;
+        this.comparisonMode = ComparisonMode.CHARACTER;
+        this.tokenDictionary = new TokenDictionary();
+        this.preparedCache = new PreparedContentCache(DEFAULT_CACHE_BUDGET);
+        this.pendingJobs = new ConcurrentHashMap<Integer, AtomicInteger>();
+        this.scanComplete = false;
+        this.candidateFilter = null;
+        this.estimatesFileName = null;
+        this.estimatesWriter = null;
+        this.thresholdedEngine = null;
+        this.logExactForAll = false;
+        this.checkpoint = null;
+        this.manifestNumbers = new ConcurrentHashMap<Integer, Integer>();
+        this.scoreCache = null;
+        this.pairsConsidered = 0;
+        this.pairsSkipped = 0;
+        this.progress = new ComparisonProgress();
+        this.resultIndex = new ResultIndex();
+        this.resultClusterer = null;
+        this.duplicateGroups = new DuplicateGroups();
+    }
+
+    /**
+     * Set how much memory the prepared file contents may use before the
+     * least recently used ones are dropped. Call before start().
+     * @param budgetBytes Budget in bytes
+     */
+    public void setPreparedCacheBudget(long budgetBytes) {
+        this.preparedCache = new PreparedContentCache(budgetBytes);
+    }
+
+    /**
+     * Set how many comparisons run at once. Defaults to one per available
+     * core. Call before start().
+     * @param numComparisonThreads Comparison Threads
+     */
+    public void setNumComparisonThreads(int numComparisonThreads) {
+        this.numComparisonThreads = numComparisonThreads;
+    }
+
+    /**
+     * Set how many comparison jobs may be queued or running at once; the
+     * Comparator waits for one to finish before submitting more. Defaults to
+     * DEFAULT_JOBS_PER_THREAD per comparison thread. Call before start().
+     * @param maxJobsInFlight Most jobs in flight
+     */
+    public void setMaxJobsInFlight(int maxJobsInFlight) {
+        this.maxJobsInFlight = maxJobsInFlight;
+    }
+
+    /**
+     * Compare in tiles rather than pairing each new file with every earlier
+     * one: files are grouped into blocks of up to tileBytes / 2 of contents
+     * (and MAX_BLOCK_FILES files), and when a block fills, or the scan ends,
+     * it is compared with itself and each earlier block, one tile per job.
+     * Size tiles to fit the L2/L3 cache. Results arrive a block at a time
+     * rather than file by file. Not used with an LSH filter, which picks
+     * pairs of its own. Zero or less turns this off (the default).
+     * Call before start().
+     * @param tileBytes Contents per tile, in bytes
+     */
+    public void setTiledAllPairs(long tileBytes) {
+        this.tileBytes = tileBytes;
+    }
+
+    /**
+     * Set how much working memory the comparisons running at any one time
+     * may need between them. Defaults to a quarter of the maximum heap.
+     * Call before start().
+     * @param budgetBytes Budget in bytes
+     */
+    public void setJobMemoryBudget(long budgetBytes) {
+        this.jobMemoryBudget = budgetBytes;
+    }
+
+    /**
+     * Set the size (length1 * length2) from which a single pair is split
+     * across all cores with the wavefront LCS, rather than run on one
+     * comparison thread. Zero or less turns this off. Call before start().
+     * @param minCells Smallest pair size to split
+     */
+    public void setParallelPairThreshold(long minCells) {
+        this.parallelPairCells = minCells;
+    }
+
+    /**
+     * Compare files character by character (the default), or line by line
+     * or token by token using ids from a dictionary shared by the session's
+     * comparison threads. Line and token modes replace the engine given to
+     * the constructor. Call before start().
+     * @param comparisonMode Comparison Mode
+     */
+    public void setComparisonMode(ComparisonMode comparisonMode) {
+        this.comparisonMode = comparisonMode;
+        if (comparisonMode != ComparisonMode.CHARACTER) {
+            similarityEngine = new TokenLcsEngine(comparisonMode, tokenDictionary);
+            if (thresholdedEngine != null) {
+                thresholdedEngine = new ThresholdedLcsEngine(thresholdedEngine.getThreshold(), similarityEngine);
+            }
+        }
+    }
+
+    /**
+     * Make the session resumable: pairs already completed in the checkpoint
+     * are not compared again, and newly completed ones are recorded in it
+     * as their results reach disk. Call before start().
+     * @param checkpoint Session Checkpoint
+     */
+    public void setCheckpoint(SessionCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Serve pairs whose contents were compared in an earlier session from a
+     * score cache, and add newly computed scores to it. Cached scores are
+     * still logged to the results file. The cache is loaded when the
+     * Comparator starts and saved when the comparisons finish. Call before start().
+     * @param scoreCache Score Cache, or null to compute every pair
+     */
+    public void setScoreCache(PairScoreCache scoreCache) {
+        this.scoreCache = scoreCache;
+    }
+
+    /**
+     * Only work out exact similarities for pairs at or above a threshold;
+     * the rest are rejected early by cheap bounds and not logged, unless
+     * logExactForAll asks for their exact value anyway. Call before start().
+     * @param threshold Similarity Threshold
+     * @param logExactForAll Whether to still compute and log every pair exactly
+     */
+    public void setSimilarityThreshold(double threshold, boolean logExactForAll) {
+        this.thresholdedEngine = new ThresholdedLcsEngine(threshold, similarityEngine);
+        this.logExactForAll = logExactForAll;
+    }
+
+    /**
+     * Only run the exact comparison on pairs the MinHash/LSH filter considers
+     * likely to be similar. Without a filter every pair is compared (the
+     * default). Skipped pairs can have their estimated shingle Jaccard
+     * similarity written to a file of their own, as 'file1,file2,estimate'
+     * lines; they never go to the results file, which only holds LCS scores.
+     * Call before start().
+     * @param candidateFilter Filter, or null for exact all-pairs
+     * @param estimatesFileName File for skipped pairs' estimates, or null to not write them
+     */
+    public void setCandidateFilter(LshCandidateFilter candidateFilter, String estimatesFileName) {
+        this.candidateFilter = candidateFilter;
+        this.estimatesFileName = estimatesFileName;
+    }
+
+    /**
+     * Group byte-identical files (by content hash) and only compare one of
+     * each group, giving the others its results (the default), or compare
+     * every file. Grouping is left off with an LSH filter or when resuming a
+     * session, which skip pairs by other means. Call before start().
+     * @param groupDuplicates Whether to group identical files
+     */
+    public void setDuplicateGrouping(boolean groupDuplicates) {
+        this.duplicateGroups = groupDuplicates ? new DuplicateGroups() : null;
+    }
+
+    /**
+     * Also pass every exact result to a Result Clusterer, to group similar
+     * files as the session goes, and tell it when the last one is in.
+     * Pairs completed by an earlier session being resumed are not passed
+     * on. Call before start().
+     * @param resultClusterer Result Clusterer (already started), or null for none
+     */
+    public void setResultClusterer(ResultClusterer resultClusterer) {
+        this.resultClusterer = resultClusterer;
+    }
+
+    /**
+     * Counts of submitted, completed, failed and skipped pairs, with
+     * throughput and ETA. Safe to poll from any thread.
+     * @return Progress
+     */
+    public ComparisonProgress getProgress() {
+        return progress;
+    }
+
+    /**
+     * The most similar files to each file, and pairs overall, found so far
+     * this session. Safe to query from any thread.
+     * @return Result Index
+     */
+    public ResultIndex getResultIndex() {
+        return resultIndex;
     }
 
     /**
@@ -76,26 +333,321 @@ public class Comparator implements Runnable {
         this.thread = null;
     }
 
+    /**
+     * Whether the thread is still running: started, and neither stopped nor
+     * ended, normally or by an error.
+     * @return true if running
+     */
+    public boolean isAlive() {
+        Thread comparatorThread = this.thread;
+        return comparatorThread != null && comparatorThread.isAlive();
+    }
+
+    /**
+     * Stop the thread, and wait until it has finished, including saving the
+     * session checkpoint on stop.
+     * @throws InterruptedException Interrupt
+     */
+    public void stopAndWait() throws InterruptedException {
+        Thread comparatorThread = this.thread;
+        stop();
+        comparatorThread.join();
+    }
+
     /**
      * For every file inside 'history' - pair it with the provided new file.
+     * Pairs are made as they are asked for, so none are held in memory
+     * before the pool has room for them.
+     * @param newFile New File
+     * @return Pairs
+     */
+    private Iterator<ComparisonPair> generatePairs(FileItem newFile) {
+        int numPastFiles = fileHistory.size();
+        return new Iterator<ComparisonPair>() {
+            private int nextIndex = 0;
+
+            @Override
+            public boolean hasNext() {
+                return nextIndex < numPastFiles;
+            }
+
+            @Override
+            public ComparisonPair next() {
+                FileItem pastFile = fileHistory.get(nextIndex++);
+                if (pastFile == newFile) {
+                    throw new IllegalArgumentException(
+                            "The provided file already exists in the " +
+                            "comparator history; please provide a new file " +
+                            "to avoid redundant similarity checks."
+                    );
+                }
+                return new ComparisonPair(newFile, pastFile);
+            }
+        };
+    }
+
+    /**
+     * Like generatePairs, but only pair the new file with the candidates
+     * found by the LSH filter. The other pairs are skipped, and their
+     * estimated similarity written to the estimates file if there is one.
      * @param newFile New File
-     * @return List of pairs
+     * @return Candidate pairs
      */
-    private List<ComparisonPair> generatePairs(FileItem newFile) {
-        List<ComparisonPair> generatedPairs = new ArrayList<ComparisonPair>();
-        for (FileItem pastFile : fileHistory) {
-            if (pastFile == newFile) {
-                throw new IllegalArgumentException(
-                        "The provided file already exists in the " +
-                        "comparator history; please provide a new file " +
-                        "to avoid redundant similarity checks."
-                );
+    private Iterator<ComparisonPair> generateCandidatePairs(FileItem newFile) {
+        List<Integer> candidates = candidateFilter.addAndFindCandidates(preparedCache.acquire(newFile));
+
+        if (estimatesWriter != null && candidates.size() < fileHistory.size()) {
+            boolean[] isCandidate = new boolean[fileHistory.size()];
+            for (int pastIndex : candidates) {
+                isCandidate[pastIndex] = true;
+            }
+
+            int newIndex = fileHistory.size();
+            for (int ii=0; ii<fileHistory.size(); ii++) {
+                if (!isCandidate[ii]) {
+                    writeEstimate(newFile, fileHistory.get(ii), candidateFilter.estimateJaccard(newIndex, ii));
+                }
             }
-            ComparisonPair newPair = new ComparisonPair(newFile, pastFile);
-            generatedPairs.add(newPair);
         }
 
-        return generatedPairs;
+        int skipped = fileHistory.size() - candidates.size();
+        pairsConsidered += fileHistory.size();
+        pairsSkipped += skipped;
+        progress.pairsSkipped(skipped);
+
+        return candidates.stream()
+                .map(pastIndex -> new ComparisonPair(newFile, fileHistory.get(pastIndex)))
+                .iterator();
+    }
+
+    /**
+     * Add a file to the open block, and close the block once it is full.
+     * @param newFile New File
+     * @throws InterruptedException Interrupt
+     */
+    private void addToBlock(FileItem newFile) throws InterruptedException {
+        if (blockStarts.isEmpty()) {
+            blockStarts.add(0);
+        }
+        fileHistory.add(newFile);
+        openBlockBytes += 2 * newFile.getContentLength(); // as chars
+
+        int openBlockFiles = fileHistory.size() - blockStarts.get(blockStarts.size() - 1);
+        if (openBlockBytes >= tileBytes / 2 || openBlockFiles >= MAX_BLOCK_FILES) {
+            closeBlock();
+        }
+    }
+
+    /**
+     * Submit the open block's tiles: with itself, then with each earlier
+     * block, newest first. Each pair of files falls in exactly one tile.
+     * @throws InterruptedException Interrupt
+     */
+    private void closeBlock() throws InterruptedException {
+        int blockStart = blockStarts.get(blockStarts.size() - 1);
+        int blockEnd = fileHistory.size();
+        if (blockEnd == blockStart) {
+            return;
+        }
+
+        for (int ii=blockStarts.size() - 1; ii>=0; ii--) {
+            int pastEnd = ii == blockStarts.size() - 1 ? blockEnd : blockStarts.get(ii + 1);
+            submitPairs(generateTilePairs(blockStart, blockEnd, blockStarts.get(ii), pastEnd), true);
+        }
+
+        blockStarts.add(blockEnd);
+        openBlockBytes = 0;
+    }
+
+    /**
+     * Pairs of a tile: each file in rows [rowStart, rowEnd) of the history
+     * with each earlier file in columns [colStart, colEnd). A block's tile
+     * with itself is the triangle below its diagonal.
+     * @return Pairs, newer file first
+     */
+    private Iterator<ComparisonPair> generateTilePairs(int rowStart, int rowEnd, int colStart, int colEnd) {
+        return new Iterator<ComparisonPair>() {
+            private int row = rowStart;
+            private int col = colStart;
+
+            @Override
+            public boolean hasNext() {
+                while (row < rowEnd && col >= Math.min(colEnd, row)) {
+                    row++;
+                    col = colStart;
+                }
+                return row < rowEnd;
+            }
+
+            @Override
+            public ComparisonPair next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return new ComparisonPair(fileHistory.get(row), fileHistory.get(col++));
+            }
+        };
+    }
+
+    /**
+     * Submit pairs to the pool, leaving out those a resumed session has
+     * already completed. Pairs of at least SMALL_PAIR_CELLS go in a job of
+     * their own; smaller ones are batched, up to BATCH_CELLS or
+     * MAX_BATCH_PAIRS per job, so scheduling does not outweigh comparing.
+     * @param pairs Pairs
+     * @throws InterruptedException Interrupt
+     */
+    private void submitPairs(Iterator<ComparisonPair> pairs) throws InterruptedException {
+        submitPairs(pairs, false);
+    }
+
+    /**
+     * As above, or with every pair in one job (a tile).
+     * @param pairs Pairs
+     * @param asOneJob Whether to submit all the pairs as one job
+     * @throws InterruptedException Interrupt
+     */
+    private void submitPairs(Iterator<ComparisonPair> pairs, boolean asOneJob) throws InterruptedException {
+        List<ComparisonPair> batch = new ArrayList<ComparisonPair>();
+        long batchCells = 0;
+        long completedBefore = 0;
+        while (pairs.hasNext()) {
+            ComparisonPair pair = pairs.next();
+            if (checkpoint != null &&
+                    checkpoint.isCompleted(manifestNumber(pair.getFile1()), manifestNumber(pair.getFile2()))) {
+                completedBefore++;
+                continue;
+            }
+
+            long cells = cells(pair);
+            jobSubmitted(pair.getFile1());
+            jobSubmitted(pair.getFile2());
+            progress.jobSubmitted(cells);
+            if (cells >= SMALL_PAIR_CELLS && !asOneJob) {
+                submitJob(List.of(pair));
+                continue;
+            }
+
+            batch.add(pair);
+            batchCells += cells;
+            if (!asOneJob && (batchCells >= BATCH_CELLS || batch.size() >= MAX_BATCH_PAIRS)) {
+                submitJob(batch);
+                batch = new ArrayList<ComparisonPair>();
+                batchCells = 0;
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            submitJob(batch);
+        }
+        progress.pairsSkipped(completedBefore);
+    }
+
+    private static long cells(ComparisonPair pair) {
+        return pair.getFile1().getContentLength() * pair.getFile2().getContentLength();
+    }
+
+    private int manifestNumber(FileItem fileItem) {
+        return manifestNumbers.get(fileItem.getFileId());
+    }
+
+    /**
+     * Record a new file in the checkpoint's manifest. If that fails the
+     * session carries on without checkpointing.
+     * @param fileItem New File
+     */
+    private void registerWithCheckpoint(FileItem fileItem) {
+        try {
+            manifestNumbers.put(fileItem.getFileId(), checkpoint.registerFile(fileItem));
+        } catch (IOException e) {
+            System.out.println("Comparator ERROR: checkpointing disabled, " + e.getMessage());
+            checkpoint.close();
+            checkpoint = null;
+        }
+    }
+
+    /**
+     * Print how much work the LSH filter saved, and how likely it is to
+     * have missed pairs near the threshold.
+     */
+    private void reportFilterTradeOff() {
+        if (candidateFilter == null || pairsConsidered == 0) {
+            return;
+        }
+
+        double t = candidateFilter.getJaccardThreshold();
+        System.out.println(String.format(
+                "LSH filter (%d bands x %d rows): compared %d of %d pairs, skipped %.1f%%. " +
+                "Chance of catching a pair at shingle Jaccard similarity (not LCS) " +
+                "%.2f: %.1f%%, at %.2f: %.1f%%, at %.2f: %.1f%%",
+                candidateFilter.getNumBands(), candidateFilter.getRowsPerBand(),
+                pairsConsidered - pairsSkipped, pairsConsidered,
+                100.0 * pairsSkipped / pairsConsidered,
+                t, 100.0 * candidateFilter.catchProbability(t),
+                Math.min(1.0, t + 0.1), 100.0 * candidateFilter.catchProbability(Math.min(1.0, t + 0.1)),
+                Math.max(0.0, t - 0.1), 100.0 * candidateFilter.catchProbability(Math.max(0.0, t - 0.1))
+        ));
+    }
+
+    /**
+     * Queue pairs for comparison as one job, once fewer than maxJobsInFlight
+     * are queued or running. The job is costed by its pairs' content
+     * lengths: time goes with the number of DP cells, memory with the
+     * engine's working set plus both contents, which the job keeps prepared
+     * while it runs. A batch's pairs run one after another, so it needs the
+     * memory of its largest pair.
+     * @param pairs Pairs
+     * @throws InterruptedException Interrupt
+     */
+    private void submitJob(List<ComparisonPair> pairs) throws InterruptedException {
+        SimilarityEngine engine = thresholdedEngine != null ? thresholdedEngine : similarityEngine;
+        long timeCost = 0;
+        long memoryCost = 0;
+        for (ComparisonPair pair : pairs) {
+            long length1 = pair.getFile1().getContentLength();
+            long length2 = pair.getFile2().getContentLength();
+            timeCost += length1 * length2;
+            memoryCost = Math.max(memoryCost,
+                    engine.estimateWorkingMemory((int)length1, (int)length2) + 2 * (length1 + length2));
+        }
+
+        jobSlots.acquire();
+        exService.execute(new ComparisonJob(pairs), timeCost, memoryCost);
+    }
+
+    /**
+     * Note that a job involving this file has been submitted.
+     * @param fileItem File
+     */
+    private void jobSubmitted(FileItem fileItem) {
+        pendingJobs.computeIfAbsent(fileItem.getFileId(), k -> new AtomicInteger()).incrementAndGet();
+    }
+
+    /**
+     * Note that a job involving this file has finished. Once the scan is over
+     * and the file has no jobs left, it has been paired with everything and
+     * its prepared contents can go.
+     * @param fileItem File
+     */
+    private void jobFinished(FileItem fileItem) {
+        AtomicInteger pending = pendingJobs.get(fileItem.getFileId());
+        if (pending != null && pending.decrementAndGet() == 0 && scanComplete) {
+            preparedCache.release(fileItem);
+        }
+    }
+
+    /**
+     * Called once no more files will arrive; releases every file that has
+     * already finished all of its comparisons.
+     */
+    private void releaseFinishedFiles() {
+        scanComplete = true;
+        for (FileItem fileItem : fileHistory) {
+            AtomicInteger pending = pendingJobs.get(fileItem.getFileId());
+            if (pending == null || pending.get() == 0) {
+                preparedCache.release(fileItem);
+            }
+        }
     }
 
     /**
@@ -106,8 +658,37 @@ public class Comparator implements Runnable {
     public void run() {
         System.out.println("Starting Comparator... ");
 
+        ScheduledExecutorService checkpointTimer = null;
         try {
-            exService = Executors.newFixedThreadPool(NUM_COMPARISON_THREADS);
+            setUpParallelPairs();
+            exService = new CostAwareExecutor(numComparisonThreads, jobMemoryBudget);
+            jobSlots = new Semaphore(maxJobsInFlight > 0 ? maxJobsInFlight : numComparisonThreads * DEFAULT_JOBS_PER_THREAD);
+            if (scoreCache != null) {
+                scoreCache.load();
+            }
+            if (candidateFilter != null || (checkpoint != null && checkpoint.isResumed())) {
+                duplicateGroups = null;
+            }
+            if (candidateFilter != null) {
+                tileBytes = 0;
+                openEstimates();
+            }
+            progress.start();
+            listener.comparisonsStarted(progress, resultIndex);
+            if (checkpoint != null) {
+                if (checkpoint.isResumed()) {
+                    System.out.println("Resuming session: " + checkpoint.getNumCompletedPairs() +
+                            " pairs already done, appending to " + checkpoint.getResultsFileName());
+                }
+
+                SessionCheckpoint sessionCheckpoint = checkpoint;
+                checkpointTimer = Executors.newSingleThreadScheduledExecutor();
+                checkpointTimer.scheduleWithFixedDelay(() -> {
+                    try {
+                        sessionCheckpoint.commit(logger);
+                    } catch (InterruptedException e) { /*Timer Stopped*/ }
+                }, CHECKPOINT_INTERVAL_SECS, CHECKPOINT_INTERVAL_SECS, TimeUnit.SECONDS);
+            }
 
             boolean running = true;
             while (running) {
@@ -115,40 +696,232 @@ public class Comparator implements Runnable {
 
                 if (fileItem == null) {
                     running = false;
+                    if (tileBytes > 0) {
+                        closeBlock();
+                    }
+                    progress.scanFinished(fileProducer.getNumFilesInDirectory());
+                    releaseFinishedFiles();
+                    if (duplicateGroups != null) {
+                        duplicateGroups.scanFinished();
+                    }
                 } else {
-                    List<ComparisonPair> pairs = generatePairs(fileItem);
-                    for (ComparisonPair pair : pairs) { // submit to similarity checking pool
-                        exService.execute(new ComparisonJob(pair));
+                    progress.setFilesFound(fileProducer.getNumFilesInDirectory());
+                    logger.registerFile(fileItem); // results are logged by file id
+                    if (checkpoint != null) {
+                        registerWithCheckpoint(fileItem);
+                    }
+
+                    // A copy of a file already seen gets its results without comparing
+                    List<ComparisonResult> duplicateResults = null;
+                    if (duplicateGroups != null) {
+                        duplicateResults = duplicateGroups.add(fileItem);
+                    }
+                    if (duplicateResults != null) {
+                        giveDuplicateResults(duplicateResults);
+                        continue;
                     }
 
-                    fileHistory.add(fileItem);
+                    // Submit to similarity checking pool, waiting whenever it is full
+                    if (tileBytes > 0) {
+                        addToBlock(fileItem);
+                    } else {
+                        if (candidateFilter == null) {
+                            submitPairs(generatePairs(fileItem));
+                        } else {
+                            submitPairs(generateCandidatePairs(fileItem));
+                        }
+                        fileHistory.add(fileItem);
+                    }
                 }
             }
 
             // Wait for all remaining comparison jobs to finish
             exService.shutdown();
             exService.awaitTermination(1, TimeUnit.HOURS);
+            progress.finish();
+            System.out.println("Comparisons: " + progress.describe());
+            shutDownParallelPairs();
+            System.out.println(String.format("Comparison jobs peaked at %.1f MB of a %.1f MB memory budget",
+                    exService.getPeakMemoryInUse() / 1e6, exService.getMemoryBudget() / 1e6));
+            if (checkpointTimer != null) {
+                checkpointTimer.shutdownNow();
+            }
+            if (checkpoint != null) {
+                // Every pair is done; once they are on disk there is nothing left to resume
+                if (checkpoint.commit(logger)) {
+                    checkpoint.finish();
+                } else {
+                    checkpoint.close();
+                }
+            } else {
+                logger.checkpoint();
+            }
+            if (scoreCache != null) {
+                scoreCache.save();
+                System.out.println(scoreCache.getSummary());
+            }
+            reportFilterTradeOff();
+            if (duplicateGroups != null && duplicateGroups.getNumDuplicates() > 0) {
+                System.out.println(duplicateGroups.getSummary());
+            }
+            if (comparisonMode != ComparisonMode.CHARACTER) {
+                System.out.println("Compared by " + comparisonMode.name().toLowerCase() + ": " +
+                        tokenDictionary.size() + " distinct ids");
+            }
+            if (thresholdedEngine != null) {
+                System.out.println(thresholdedEngine.getRejectionSummary());
+            }
+            if (resultClusterer != null) {
+                resultClusterer.finish();
+            }
 
             // Notify user
-            Platform.runLater(() -> {
-                Alert aa = new Alert(Alert.AlertType.INFORMATION);
-                aa.setContentText("Comparisons completed. See table for high-similarity results.");
-                aa.show();
-            });
+            listener.comparisonsFinished();
 
         } catch (InterruptedException e) {
             exService.shutdownNow(); // prematurely shutdown all comparison jobs
+            shutDownParallelPairs();
+            if (checkpointTimer != null) {
+                checkpointTimer.shutdownNow();
+            }
+            if (checkpoint != null) {
+                saveCheckpointOnStop();
+            }
+            if (scoreCache != null) {
+                scoreCache.save(); // scores computed so far are still good
+            }
         }
 
+        closeEstimates();
         System.out.println("Stopping Comparator... ");
     }
 
+    private void openEstimates() {
+        if (estimatesFileName == null) {
+            return;
+        }
+
+        try {
+            estimatesWriter = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(estimatesFileName), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.out.println("Comparator ERROR: " + e.getMessage());
+        }
+    }
+
+    private void writeEstimate(FileItem file1, FileItem file2, double estimate) {
+        try {
+            estimatesWriter.write(file1.getFileName() + "," + file2.getFileName() + "," + estimate + "\n");
+        } catch (IOException e) {
+            System.out.println("Comparator ERROR: " + e.getMessage());
+            closeEstimates(); // stop writing estimates, carry on comparing
+        }
+    }
+
+    private void closeEstimates() {
+        if (estimatesWriter == null) {
+            return;
+        }
+
+        try {
+            estimatesWriter.close();
+        } catch (IOException e) {
+            System.out.println("Comparator ERROR: " + e.getMessage());
+        }
+        estimatesWriter = null;
+    }
+
+    /**
+     * Route very large pairs to the wavefront engine, on a pool of their own.
+     * Pointless on a single core, so left off there, and only for
+     * character comparisons.
+     */
+    private void setUpParallelPairs() {
+        int numCores = Runtime.getRuntime().availableProcessors();
+        if (parallelPairCells <= 0 || numCores < 2 || !similarityEngine.isCharacterLevel()) {
+            return;
+        }
+
+        pairPool = new ForkJoinPool(numCores);
+        similarityEngine = new WavefrontLcsEngine(similarityEngine, parallelPairCells, pairPool);
+        if (thresholdedEngine != null) {
+            thresholdedEngine = new ThresholdedLcsEngine(thresholdedEngine.getThreshold(), similarityEngine);
+        }
+    }
+
+    private void shutDownParallelPairs() {
+        if (pairPool != null) {
+            pairPool.shutdownNow();
+            System.out.println("Split " + ((WavefrontLcsEngine)similarityEngine).getParallelPairs() +
+                    " large pairs across cores");
+        }
+    }
+
+    /**
+     * Log results worked out from duplicate files, as if they came from jobs.
+     * @param results Results
+     * @throws InterruptedException Interrupt
+     */
+    private void giveDuplicateResults(List<ComparisonResult> results) throws InterruptedException {
+        for (ComparisonResult result : results) {
+            logResult(result.getComparisonPair().getFile1(), result.getComparisonPair().getFile2(),
+                    result.getSimilarity(), true);
+            resultIndex.add(result);
+            if (resultClusterer != null) {
+                resultClusterer.add(result);
+            }
+            listener.jobCompleted(result.getComparisonPair().getFile1().getFileId(),
+                    result.getComparisonPair().getFile2().getFileId(), result.getSimilarity());
+        }
+        progress.pairsFromDuplicates(results.size());
+    }
+
+    /**
+     * Hand a pair's result to the Results Logger and, in a checkpointed
+     * session, mark the pair complete, with no commit in between.
+     * @param file1 File 1
+     * @param file2 File 2
+     * @param sim Similarity
+     * @param log Whether to log the result (or only mark the pair complete)
+     * @throws InterruptedException Interrupt
+     */
+    private void logResult(FileItem file1, FileItem file2, double sim, boolean log) throws InterruptedException {
+        SessionCheckpoint sessionCheckpoint = checkpoint;
+        if (sessionCheckpoint == null) {
+            if (log) {
+                logger.putNextResult(file1.getFileId(), file2.getFileId(), sim);
+            }
+            return;
+        }
+
+        sessionCheckpoint.beginPair();
+        try {
+            if (log) {
+                logger.putNextResult(file1.getFileId(), file2.getFileId(), sim);
+            }
+            sessionCheckpoint.markCompleted(manifestNumber(file1), manifestNumber(file2));
+        } finally {
+            sessionCheckpoint.endPair();
+        }
+    }
+
+    /**
+     * Commit what has been logged so far before stopping, so a later
+     * session can resume from here.
+     */
+    private void saveCheckpointOnStop() {
+        try {
+            checkpoint.commit(logger);
+        } catch (InterruptedException e) { /*Give Up*/ }
+        checkpoint.close();
+    }
+
     private class ComparisonJob implements Runnable {
 
-        private ComparisonPair comparisonPair;
+        private List<ComparisonPair> comparisonPairs;
 
-        public ComparisonJob(ComparisonPair comparisonPair) {
-            this.comparisonPair = comparisonPair;
+        public ComparisonJob(List<ComparisonPair> comparisonPairs) {
+            this.comparisonPairs = comparisonPairs;
         }
 
         @Override
@@ -156,40 +929,130 @@ public class Comparator implements Runnable {
             System.out.println("Start Comparison Job");
 
             try {
-                double sim;
-                try {
-                    sim = Helpers.calcSimilarity(
-                            comparisonPair.getFile1Content(),
-                            comparisonPair.getFile2Content()
-                    );
-
-                } catch (OutOfMemoryError e) {
-                    System.out.println("Comparison Job ERROR: *OUT OF MEMORY*");
-                    sim = -1.0;
+                for (ComparisonPair comparisonPair : comparisonPairs) {
+                    comparePair(comparisonPair);
                 }
 
-                // Log results
-                ComparisonResult comparisonResult = new ComparisonResult(comparisonPair, sim);
-                logger.putNextResult(comparisonResult);
+            } catch (InterruptedException | CancellationException e) { /*Thread Finished*/
+            } catch (IllegalStateException e) {
+                System.out.println("Comparator ERROR: " + e.getMessage()); // the Results Logger has gone
+            } finally {
+                jobSlots.release();
+            }
 
-                // Update GUI
-                synchronized (mutex) {
-                    comparisonJobsComplete++;
+            System.out.println("Stop Comparison Job, #" + progress.getDone());
+        }
+
+        /**
+         * Score one pair, then log and report its result.
+         * @param comparisonPair Pair
+         * @throws InterruptedException Interrupt
+         */
+        private void comparePair(ComparisonPair comparisonPair) throws InterruptedException {
+            double sim;
+            Double cached = lookUpScore(comparisonPair);
+            if (cached != null) {
+                sim = cached;
+                jobFinished(comparisonPair.getFile1());
+                jobFinished(comparisonPair.getFile2());
+            } else {
+                sim = compare(comparisonPair);
+                storeScore(comparisonPair, sim);
+            }
+
+            // Log results (pairs rejected by the threshold are left out)
+            logResult(comparisonPair.getFile1(), comparisonPair.getFile2(), sim,
+                    sim != ThresholdedLcsEngine.BELOW_THRESHOLD);
+
+            // No ComparisonResult is made here; the clusterer makes one for the rare pair it keeps
+            if (sim >= 0.0) {
+                resultIndex.add(comparisonPair.getFile1(), comparisonPair.getFile2(), sim);
+                if (resultClusterer != null) {
+                    resultClusterer.add(comparisonPair, sim);
                 }
+            }
+
+            // Report progress
+            if (sim == -1.0) {
+                progress.jobFailed(cells(comparisonPair));
+            } else {
+                progress.jobCompleted(cells(comparisonPair));
+            }
+            listener.jobCompleted(comparisonPair.getFile1().getFileId(), comparisonPair.getFile2().getFileId(), sim);
 
-                int nFiles = fileProducer.getNumFilesInDirectory();
-                int predictedNumJobs = (int)(0.5 * (Math.pow(nFiles, 2) - nFiles));
-                Platform.runLater(() -> {
-                    guiJobText.setText(comparisonJobsComplete + "/" + predictedNumJobs + " Comparisons");
-                    guiProgressBar.setProgress((double)(comparisonJobsComplete) / (predictedNumJobs));
-                    if (comparisonResult.getSimilarity() > 0.5) {
-                        guiTable.getItems().add(0, comparisonResult);
+            // Copies of either file get the same result
+            if (duplicateGroups != null) {
+                giveDuplicateResults(duplicateGroups.fanOut(comparisonPair, sim));
+            }
+        }
+
+        /**
+         * Work out the pair's similarity with the engine(s) in use.
+         * @param comparisonPair Pair
+         * @return Similarity, or BELOW_THRESHOLD if rejected by the threshold
+         */
+        private double compare(ComparisonPair comparisonPair) {
+            double sim;
+            try {
+                PreparedContent file1 = preparedCache.acquire(comparisonPair.getFile1());
+                PreparedContent file2 = preparedCache.acquire(comparisonPair.getFile2());
+                if (thresholdedEngine == null) {
+                    sim = similarityEngine.calcSimilarity(file1, file2);
+                } else {
+                    sim = thresholdedEngine.calcSimilarity(file1, file2);
+                    if (sim == ThresholdedLcsEngine.BELOW_THRESHOLD && logExactForAll) {
+                        sim = similarityEngine.calcSimilarity(file1, file2);
                     }
-                });
+                }
+
+            } catch (OutOfMemoryError e) {
+                System.out.println("Comparison Job ERROR: *OUT OF MEMORY*");
+                sim = -1.0;
+
+            } finally {
+                jobFinished(comparisonPair.getFile1());
+                jobFinished(comparisonPair.getFile2());
+            }
+
+            return sim;
+        }
+
+        /**
+         * Look the pair up in the score cache, applying the threshold to
+         * the cached score as the thresholded engine would. Unreadable files
+         * have no real hash, so they are never looked up.
+         * @param comparisonPair Pair
+         * @return Similarity, or null if it has to be computed
+         */
+        private Double lookUpScore(ComparisonPair comparisonPair) {
+            FileMetadata md1 = comparisonPair.getFile1().getMetadata();
+            FileMetadata md2 = comparisonPair.getFile2().getMetadata();
+            if (scoreCache == null || md1 == null || md2 == null || md1.isReadFailed() || md2.isReadFailed()) {
+                return null;
+            }
 
-            } catch (InterruptedException e) { /*Thread Finished*/ }
+            Double cached = scoreCache.get(md1.getContentHash(), md2.getContentHash());
+            if (cached != null && thresholdedEngine != null && !logExactForAll &&
+                    cached < thresholdedEngine.getThreshold()) {
+                return ThresholdedLcsEngine.BELOW_THRESHOLD;
+            }
+            return cached;
+        }
 
-            System.out.println("Stop Comparison Job, #" + comparisonJobsComplete);
+        /**
+         * Add an exact score to the cache. Rejections and failures are not
+         * exact, and unreadable files have no real hash, so they are left out.
+         * @param comparisonPair Pair
+         * @param sim Similarity
+         */
+        private void storeScore(ComparisonPair comparisonPair, double sim) {
+            FileMetadata md1 = comparisonPair.getFile1().getMetadata();
+            FileMetadata md2 = comparisonPair.getFile2().getMetadata();
+            if (scoreCache == null || md1 == null || md2 == null || sim < 0.0 ||
+                    md1.isReadFailed() || md2.isReadFailed()) {
+                return;
+            }
+            scoreCache.put(md1.getContentHash(), md2.getContentHash(), sim);
         }
     }
 }
@@ -0,0 +1,35 @@
+package sec.multithreadedfilecomparison.controller;
+
+import sec.multithreadedfilecomparison.model.ResultIndex;
+
+/**
+ * Receives progress and results from the Comparator, so that it can drive a
+ * GUI, a console, or nothing at all without depending on any of them.
+ * Methods are called from the comparison threads, so implementations must be
+ * thread-safe and quick; hand anything slow to another thread.
+ */
+public interface ComparisonListener {
+
+    /**
+     * The Comparator has started. Progress counts, and the most similar
+     * results so far, can be polled from here on, from any thread.
+     * @param progress Progress
+     * @param results Most Similar Results
+     */
+    void comparisonsStarted(ComparisonProgress progress, ResultIndex results);
+
+    /**
+     * A comparison job has finished, or a pair of duplicate files has been
+     * given its result without one.
+     * @param file1Id File 1 Id
+     * @param file2Id File 2 Id
+     * @param similarity Similarity
+     */
+    void jobCompleted(int file1Id, int file2Id, double similarity);
+
+    /**
+     * Every comparison has finished and its result has been handed to the
+     * Results Logger. Not called if the Comparator is stopped early.
+     */
+    void comparisonsFinished();
+}
@@ -0,0 +1,227 @@
+package sec.multithreadedfilecomparison.controller;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class's responsibility is to:
+ * Count a session's comparison jobs as they move through the pipeline, and
+ * work out throughput and time remaining from those counts.
+ * Comparison threads only ever add to striped counters (LongAdder), so
+ * recording never contends; readers such as the GUI or the CLI poll the
+ * getters whenever they like.
+ *
+ * Counts: submitted jobs, and of those completed or failed; pairs skipped
+ * without a job (LSH filtering, or already done in a resumed session); and
+ * pairs of duplicate files, given their results without a job.
+ * The expected total is n(n-1)/2 for the files found so far. It is an
+ * estimate while the scan is running and exact once it has finished.
+ */
+public class ComparisonProgress {
+
+    private final LongAdder submitted;
+    private final LongAdder completed;
+    private final LongAdder failed;
+    private final LongAdder skipped;
+    private final LongAdder fromDuplicates;
+    private final LongAdder cellsSubmitted;
+    private final LongAdder cellsFinished;
+    private volatile int filesFound;
+    private volatile boolean scanComplete;
+    private volatile long startNanos;
+    private volatile long endNanos;
+
+    public ComparisonProgress() {
+        this.submitted = new LongAdder();
+        this.completed = new LongAdder();
+        this.failed = new LongAdder();
+        this.skipped = new LongAdder();
+        this.fromDuplicates = new LongAdder();
+        this.cellsSubmitted = new LongAdder();
+        this.cellsFinished = new LongAdder();
+        this.filesFound = 0;
+        this.scanComplete = false;
+        this.startNanos = System.nanoTime();
+        this.endNanos = 0;
+    }
+
+    /**
+     * Restart the clock, at the start of a session.
+     */
+    public void start() {
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Stop the clock, once every job has finished.
+     */
+    public void finish() {
+        endNanos = System.nanoTime();
+    }
+
+    public void setFilesFound(int filesFound) {
+        this.filesFound = filesFound;
+    }
+
+    /**
+     * No more files will be found: the expected total is now exact.
+     * @param filesFound Final number of files
+     */
+    public void scanFinished(int filesFound) {
+        this.filesFound = filesFound;
+        this.scanComplete = true;
+    }
+
+    /**
+     * Note a job handed to the comparison pool.
+     * @param cells Size of the pair (length1 * length2)
+     */
+    public void jobSubmitted(long cells) {
+        submitted.increment();
+        cellsSubmitted.add(cells);
+    }
+
+    /**
+     * Note a job that produced a score.
+     * @param cells Size of the pair (length1 * length2)
+     */
+    public void jobCompleted(long cells) {
+        completed.increment();
+        cellsFinished.add(cells);
+    }
+
+    /**
+     * Note a job that could not produce a score.
+     * @param cells Size of the pair (length1 * length2)
+     */
+    public void jobFailed(long cells) {
+        failed.increment();
+        cellsFinished.add(cells);
+    }
+
+    /**
+     * Note pairs that were dealt with without a job.
+     * @param numPairs Pairs
+     */
+    public void pairsSkipped(long numPairs) {
+        skipped.add(numPairs);
+    }
+
+    /**
+     * Note pairs of duplicate files that were given results without a job.
+     * @param numPairs Pairs
+     */
+    public void pairsFromDuplicates(long numPairs) {
+        fromDuplicates.add(numPairs);
+    }
+
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    public long getFromDuplicates() {
+        return fromDuplicates.sum();
+    }
+
+    /**
+     * Pairs dealt with one way or another: completed, failed, skipped or
+     * given from duplicates.
+     * @return Pairs
+     */
+    public long getDone() {
+        return completed.sum() + failed.sum() + skipped.sum() + fromDuplicates.sum();
+    }
+
+    public long getExpectedTotal() {
+        long n = filesFound;
+        return n * (n - 1) / 2;
+    }
+
+    public boolean isTotalExact() {
+        return scanComplete;
+    }
+
+    /**
+     * Fraction of the expected total done, between 0 and 1.
+     * @return Fraction Done
+     */
+    public double getFractionDone() {
+        long total = getExpectedTotal();
+        return total == 0 ? 0.0 : Math.min(1.0, (double)getDone() / total);
+    }
+
+    public double getElapsedSeconds() {
+        long end = endNanos != 0 ? endNanos : System.nanoTime();
+        return (end - startNanos) / 1e9;
+    }
+
+    /**
+     * Jobs finished per second, since the start.
+     * @return Pairs per second
+     */
+    public double getPairsPerSecond() {
+        double seconds = getElapsedSeconds();
+        return seconds > 0 ? (completed.sum() + failed.sum()) / seconds : 0.0;
+    }
+
+    /**
+     * DP cells (length1 * length2, i.e. bytes squared for ASCII) of the
+     * finished jobs per second, since the start. Steadier than pairs per
+     * second when file sizes vary.
+     * @return Cells per second
+     */
+    public double getCellsPerSecond() {
+        double seconds = getElapsedSeconds();
+        return seconds > 0 ? cellsFinished.sum() / seconds : 0.0;
+    }
+
+    /**
+     * Estimated seconds until every pair is done. Once the scan is over every
+     * pair has been submitted, so the cells still queued and the cell rate
+     * give the estimate; before then it goes by pairs left and pair rate.
+     * @return Seconds remaining, or -1 if there is not enough to go on yet
+     */
+    public double getEtaSeconds() {
+        if (endNanos != 0) {
+            return 0.0;
+        }
+
+        if (scanComplete) {
+            double cellRate = getCellsPerSecond();
+            long cellsLeft = cellsSubmitted.sum() - cellsFinished.sum();
+            return cellRate > 0 ? cellsLeft / cellRate : -1.0;
+        }
+
+        double pairRate = getPairsPerSecond();
+        long pairsLeft = getExpectedTotal() - getDone();
+        return pairRate > 0 ? Math.max(0, pairsLeft) / pairRate : -1.0;
+    }
+
+    /**
+     * One line of progress, for logs and the console.
+     * @return Summary
+     */
+    public String describe() {
+        double eta = getEtaSeconds();
+        return String.format(
+                "%d/%d%s pairs (%d completed, %d failed, %d skipped, %d from duplicates, %d queued), " +
+                "%.0f pairs/sec, %.3g cells/sec, ETA %s",
+                getDone(), getExpectedTotal(), scanComplete ? "" : "+",
+                getCompleted(), getFailed(), getSkipped(), getFromDuplicates(),
+                getSubmitted() - getCompleted() - getFailed(),
+                getPairsPerSecond(), getCellsPerSecond(),
+                eta < 0 ? "unknown" : String.format("%.0fs", eta)
+        );
+    }
+}
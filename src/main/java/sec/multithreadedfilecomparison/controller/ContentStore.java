@@ -0,0 +1,66 @@
+package sec.multithreadedfilecomparison.controller;
+
+import sec.multithreadedfilecomparison.model.StoredContent;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class's responsibility is to:
+ * Decide how a scanned file's contents are kept without putting them on the
+ * heap. Files are memory-mapped while the mapped total stays within the
+ * off-heap budget; past that, only the path is kept and the file is read
+ * again each time it is prepared for comparison.
+ */
+public class ContentStore {
+
+    private final long offHeapBudget;
+    private final AtomicLong mappedBytes;
+
+    public ContentStore(long offHeapBudget) {
+        this.offHeapBudget = offHeapBudget;
+        this.mappedBytes = new AtomicLong();
+    }
+
+    /**
+     * Keep a file's contents, mapping it if the budget allows.
+     * @param path File Path
+     * @param size File Size in bytes
+     * @return Stored Contents
+     */
+    public StoredContent store(Path path, long size) {
+        if (size <= Integer.MAX_VALUE && reserve(size)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                // The mapping stays valid after the channel closes
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                return new StoredContent(path, size, mapped);
+
+            } catch (IOException e) {
+                System.out.println("Content Store ERROR: " + e.getMessage());
+                mappedBytes.addAndGet(-size);
+            }
+        }
+
+        return new StoredContent(path, size, null);
+    }
+
+    public long getMappedBytes() {
+        return mappedBytes.get();
+    }
+
+    private boolean reserve(long size) {
+        long current;
+        do {
+            current = mappedBytes.get();
+            if (current + size > offHeapBudget) {
+                return false;
+            }
+        } while (!mappedBytes.compareAndSet(current, current + size));
+
+        return true;
+    }
+}
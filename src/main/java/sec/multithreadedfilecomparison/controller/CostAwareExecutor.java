@@ -0,0 +1,140 @@
+package sec.multithreadedfilecomparison.controller;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class's responsibility is to:
+ * Run comparison jobs on a fixed set of threads, most expensive first, so a
+ * few huge pairs do not end up running alone at the end of a session.
+ * Jobs also declare how much memory they need; a job only starts once the
+ * jobs already running leave room for it within the memory budget, so
+ * several huge pairs are not held in memory at once. A job bigger than the
+ * whole budget still runs, but only by itself.
+ * Jobs start in queue order: a big job waiting for memory is not overtaken
+ * by smaller ones behind it, so it cannot be starved.
+ */
+public class CostAwareExecutor extends ThreadPoolExecutor {
+
+    private final long memoryBudget;
+    private final AtomicLong sequence;
+    private final Deque<CostedJob> waiting;
+    private long memoryInUse;
+    private long peakMemoryInUse;
+
+    public CostAwareExecutor(int numThreads, long memoryBudget) {
+        super(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>());
+        this.memoryBudget = memoryBudget;
+        this.sequence = new AtomicLong();
+        this.waiting = new ArrayDeque<CostedJob>();
+        this.memoryInUse = 0;
+        this.peakMemoryInUse = 0;
+    }
+
+    /**
+     * Queue a job by its estimated cost.
+     * @param job Job
+     * @param timeCost Estimated run time, in any consistent unit (e.g. DP cells)
+     * @param memoryCost Estimated memory needed while running, in bytes
+     */
+    public void execute(Runnable job, long timeCost, long memoryCost) {
+        super.execute(new CostedJob(job, timeCost, memoryCost, sequence.getAndIncrement()));
+    }
+
+    /**
+     * Jobs given without a cost are treated as free and run after costed ones.
+     * @param job Job
+     */
+    @Override
+    public void execute(Runnable job) {
+        if (job instanceof CostedJob) {
+            super.execute(job);
+        } else {
+            execute(job, 0, 0);
+        }
+    }
+
+    public synchronized long getMemoryInUse() {
+        return memoryInUse;
+    }
+
+    public synchronized long getPeakMemoryInUse() {
+        return peakMemoryInUse;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Wait, in turn, until the job's memory fits alongside those running.
+     */
+    @Override
+    protected void beforeExecute(Thread thread, Runnable job) {
+        super.beforeExecute(thread, job);
+        CostedJob costedJob = (CostedJob)job;
+        synchronized (this) {
+            waiting.addLast(costedJob);
+            try {
+                while (waiting.peekFirst() != costedJob ||
+                        (memoryInUse > 0 && memoryInUse + costedJob.memoryCost > memoryBudget)) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                // Shutting down now: give up the turn and skip the job
+                waiting.remove(costedJob);
+                notifyAll();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Comparison job cancelled", e);
+            }
+
+            waiting.removeFirst();
+            memoryInUse += costedJob.memoryCost;
+            peakMemoryInUse = Math.max(peakMemoryInUse, memoryInUse);
+            notifyAll();
+        }
+    }
+
+    @Override
+    protected void afterExecute(Runnable job, Throwable thrown) {
+        super.afterExecute(job, thrown);
+        synchronized (this) {
+            memoryInUse -= ((CostedJob)job).memoryCost;
+            notifyAll();
+        }
+    }
+
+    /**
+     * A job with its costs; ordered most expensive first, then first come.
+     */
+    private static class CostedJob implements Runnable, Comparable<CostedJob> {
+        private final Runnable job;
+        private final long timeCost;
+        private final long memoryCost;
+        private final long sequence;
+
+        private CostedJob(Runnable job, long timeCost, long memoryCost, long sequence) {
+            this.job = job;
+            this.timeCost = timeCost;
+            this.memoryCost = memoryCost;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            job.run();
+        }
+
+        @Override
+        public int compareTo(CostedJob other) {
+            if (timeCost != other.timeCost) {
+                return Long.compare(other.timeCost, timeCost);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package sec.multithreadedfilecomparison.controller;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes results as 'file1,file2,similarity' lines.
+ * Lines are built straight into one reused byte buffer, from the names'
+ * UTF-8 bytes and the similarity's digits, so writing allocates nothing.
+ */
+public class CsvResultSink implements ResultSink {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private final FileOutputStream out;
+    private final FileNameTable fileNames;
+    private final byte[] buffer;
+    private final StringBuilder digits;
+    private int position;
+    private long length;
+
+    public CsvResultSink(String outputFileName, FileNameTable fileNames) throws IOException {
+        // Plain stream writes (not a channel), so an interrupt cannot close the file mid-write
+        this.out = new FileOutputStream(outputFileName, true);
+        this.fileNames = fileNames;
+        this.buffer = new byte[BUFFER_SIZE];
+        this.digits = new StringBuilder(32);
+        this.position = 0;
+        this.length = new File(outputFileName).length();
+    }
+
+    @Override
+    public void write(int file1Id, int file2Id, double similarity) throws IOException {
+        // Print a new record as 'file1,file2,%'
+        put(fileNames.getNameBytes(file1Id));
+        put((byte)',');
+        put(fileNames.getNameBytes(file2Id));
+        put((byte)',');
+
+        digits.setLength(0);
+        digits.append(similarity); // same digits as Double.toString, without the String
+        if (position + digits.length() + 1 > buffer.length) {
+            flushBuffer();
+        }
+        for (int ii=0; ii<digits.length(); ii++) {
+            buffer[position++] = (byte)digits.charAt(ii); // always ASCII
+        }
+        buffer[position++] = '\n';
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+    }
+
+    @Override
+    public void sync() throws IOException {
+        flushBuffer();
+        out.getFD().sync();
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        if (position + bytes.length > buffer.length) {
+            flushBuffer();
+            if (bytes.length > buffer.length) {
+                out.write(bytes);
+                length += bytes.length;
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void put(byte b) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = b;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            length += position;
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package sec.multithreadedfilecomparison.controller;
+
+import sec.multithreadedfilecomparison.helper.ThresholdedLcsEngine;
+import sec.multithreadedfilecomparison.model.ComparisonPair;
+import sec.multithreadedfilecomparison.model.ComparisonResult;
+import sec.multithreadedfilecomparison.model.FileItem;
+import sec.multithreadedfilecomparison.model.FileMetadata;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class's responsibility is to:
+ * Group byte-identical files (same content hash and size) as they arrive, so
+ * that only the first file of each group, its representative, is compared.
+ * Pairs within a group score 1.0 outright, and the score of each pair of
+ * representatives is fanned out to every pair of their groups' members.
+ *
+ * A member can join after some of its representative's pairs have finished,
+ * so representative scores are kept while the scan is running (no file can
+ * join after it). Every decision is made under this object's lock, and a
+ * member pair's result is given by whichever comes last of: the members
+ * joining, or the representative pair finishing. So each pair gets exactly
+ * one result. If the kept scores reach MAX_STORED_SCORES, later duplicates
+ * are simply compared as files of their own.
+ */
+public class DuplicateGroups {
+
+    private static final int MAX_STORED_SCORES = 1 << 22;
+    private final Map<Long, Group> groupsByHash;
+    private final Map<Integer, Group> groupsByRepresentative;
+    private final List<Group> groups;
+    private final ScoreTable scores;
+    private boolean keepingScores;
+    private long numDuplicates;
+    private long pairsFannedOut;
+
+    public DuplicateGroups() {
+        this.groupsByHash = new HashMap<Long, Group>();
+        this.groupsByRepresentative = new HashMap<Integer, Group>();
+        this.groups = new ArrayList<Group>();
+        this.scores = new ScoreTable();
+        this.keepingScores = true;
+        this.numDuplicates = 0;
+        this.pairsFannedOut = 0;
+    }
+
+    /**
+     * Place a newly arrived file. A file with new contents starts its own
+     * group and gets null back: compare it as usual. A duplicate joins the
+     * group of the first file with the same contents, and gets back the
+     * results it can be given straight away; the rest come from fanOut().
+     * @param fileItem New File
+     * @return Results for a duplicate, or null for a new representative
+     */
+    public synchronized List<ComparisonResult> add(FileItem fileItem) {
+        FileMetadata metadata = fileItem.getMetadata();
+        // An unreadable file's hash says nothing about it, so it stands alone
+        boolean hashed = metadata != null && !metadata.isReadFailed();
+        Group group = null;
+        if (hashed) {
+            group = groupsByHash.get(metadata.getContentHash());
+        }
+
+        if (group == null || !keepingScores || group.size != metadata.getSize()) {
+            Group newGroup = new Group(fileItem, metadata == null ? -1 : metadata.getSize());
+            if (hashed && group == null) {
+                groupsByHash.put(metadata.getContentHash(), newGroup);
+            }
+            groupsByRepresentative.put(fileItem.getFileId(), newGroup);
+            groups.add(newGroup);
+            return null;
+        }
+
+        List<ComparisonResult> results = new ArrayList<ComparisonResult>();
+        for (FileItem member : group.members) {
+            results.add(newResult(fileItem, member, 1.0));
+        }
+
+        int representativeId = group.getRepresentative().getFileId();
+        for (Group other : groups) {
+            if (other == group) {
+                continue;
+            }
+
+            double score = scores.get(pairKey(representativeId, other.getRepresentative().getFileId()));
+            if (!Double.isNaN(score) && score != ThresholdedLcsEngine.BELOW_THRESHOLD) {
+                for (FileItem member : other.members) {
+                    results.add(newResult(fileItem, member, score));
+                }
+            }
+        }
+
+        group.members.add(fileItem);
+        numDuplicates++;
+        pairsFannedOut += results.size();
+        return results;
+    }
+
+    /**
+     * A pair of representatives has its result: work out the results of the
+     * pairs of their groups' members that have joined so far.
+     * @param comparisonPair Representatives' Pair
+     * @param score Representatives' Similarity
+     * @return Member Results (not including the representatives' own)
+     */
+    public synchronized List<ComparisonResult> fanOut(ComparisonPair comparisonPair, double score) {
+        Group group1 = groupsByRepresentative.get(comparisonPair.getFile1().getFileId());
+        Group group2 = groupsByRepresentative.get(comparisonPair.getFile2().getFileId());
+        if (group1 == null || group2 == null) {
+            return List.of();
+        }
+
+        if (keepingScores) {
+            long key = pairKey(group1.getRepresentative().getFileId(), group2.getRepresentative().getFileId());
+            keepingScores = scores.put(key, score, MAX_STORED_SCORES);
+            if (!keepingScores) {
+                scores.clear(); // no more duplicates can join, so the scores are no use
+            }
+        }
+        if (score == ThresholdedLcsEngine.BELOW_THRESHOLD ||
+                (group1.members.size() == 1 && group2.members.size() == 1)) {
+            return List.of();
+        }
+
+        List<ComparisonResult> results = new ArrayList<ComparisonResult>();
+        for (FileItem member1 : group1.members) {
+            for (FileItem member2 : group2.members) {
+                if (member1 != group1.getRepresentative() || member2 != group2.getRepresentative()) {
+                    results.add(newResult(member1, member2, score));
+                }
+            }
+        }
+
+        pairsFannedOut += results.size();
+        return results;
+    }
+
+    /**
+     * No more files will arrive, so no more members can join: drop the kept scores.
+     */
+    public synchronized void scanFinished() {
+        keepingScores = false;
+        scores.clear();
+    }
+
+    public synchronized long getNumDuplicates() {
+        return numDuplicates;
+    }
+
+    public synchronized long getPairsFannedOut() {
+        return pairsFannedOut;
+    }
+
+    public synchronized String getSummary() {
+        long duplicatedGroups = groups.stream().filter(group -> group.members.size() > 1).count();
+        return String.format(
+                "Duplicates: %d file(s) in %d group(s) of identical files; %d pair(s) given without comparing",
+                numDuplicates, duplicatedGroups, pairsFannedOut
+        );
+    }
+
+    /**
+     * Later file first, as the Comparator pairs a new file with past ones.
+     */
+    private static ComparisonResult newResult(FileItem file1, FileItem file2, double score) {
+        if (file1.getFileId() < file2.getFileId()) {
+            return new ComparisonResult(new ComparisonPair(file2, file1), score);
+        }
+        return new ComparisonResult(new ComparisonPair(file1, file2), score);
+    }
+
+    private static long pairKey(int fileId1, int fileId2) {
+        int low = Math.min(fileId1, fileId2);
+        int high = Math.max(fileId1, fileId2);
+        return ((long)low << 32) | (high & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Byte-identical files, the first of which (the representative) stands for them all.
+     */
+    private static class Group {
+        private final List<FileItem> members;
+        private final long size;
+
+        private Group(FileItem representative, long size) {
+            this.members = new ArrayList<FileItem>();
+            this.members.add(representative);
+            this.size = size;
+        }
+
+        private FileItem getRepresentative() {
+            return members.get(0);
+        }
+    }
+
+    /**
+     * Open-addressing map from pair key to score, in primitive arrays.
+     * Pair keys are never 0 (the two file ids differ), so 0 marks a free slot.
+     */
+    private static class ScoreTable {
+        private static final int INITIAL_CAPACITY = 1024;
+        private long[] keys;
+        private double[] values;
+        private int size;
+
+        private ScoreTable() {
+            clear();
+        }
+
+        private double get(long key) {
+            int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+            return Double.NaN;
+        }
+
+        /**
+         * Keep a score, unless the table already holds maxSize of them.
+         * @return Whether the score was kept
+         */
+        private boolean put(long key, double value, int maxSize) {
+            if (size >= maxSize) {
+                return false;
+            }
+            if (size * 2 >= keys.length) {
+                grow();
+            }
+
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (keys[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == 0) {
+                size++;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            return true;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            double[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new double[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int ii=0; ii<oldKeys.length; ii++) {
+                if (oldKeys[ii] != 0) {
+                    int slot = hash(oldKeys[ii]) & mask;
+                    while (keys[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[ii];
+                    values[slot] = oldValues[ii];
+                }
+            }
+        }
+
+        private void clear() {
+            keys = new long[INITIAL_CAPACITY];
+            values = new double[INITIAL_CAPACITY];
+            size = 0;
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int)(h ^ (h >>> 32));
+        }
+    }
+}
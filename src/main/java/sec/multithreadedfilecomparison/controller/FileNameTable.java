@@ -0,0 +1,71 @@
+package sec.multithreadedfilecomparison.controller;
+
+import sec.multithreadedfilecomparison.model.FileItem;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * File names by file id, so results can travel to the Results Logger as
+ * plain ids and be named only as they are written. Each name is also kept
+ * encoded as UTF-8, once, for the sinks to copy out as it is.
+ * Files are registered by whoever produces results for them (before
+ * those results), and looked up from the logger thread.
+ */
+public class FileNameTable {
+
+    private static final int INITIAL_CAPACITY = 256;
+    private volatile Name[] names;
+
+    public FileNameTable() {
+        this.names = new Name[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Make a file's name known under its id. Cheap if it already is.
+     * @param fileItem File
+     */
+    public void register(FileItem fileItem) {
+        int id = fileItem.getFileId();
+        if (id < 0) {
+            throw new IllegalArgumentException("Only files with ids can be logged: " + fileItem.getFileName());
+        }
+
+        Name[] current = names;
+        if (id < current.length && current[id] != null) {
+            return;
+        }
+
+        synchronized (this) {
+            Name[] updated = names;
+            if (id >= updated.length) {
+                updated = Arrays.copyOf(updated, Math.max(id + 1, updated.length * 2));
+            }
+            updated[id] = new Name(fileItem.getFileName());
+            names = updated; // publish the new entry
+        }
+    }
+
+    public String getName(int id) {
+        return names[id].name;
+    }
+
+    /**
+     * The name as UTF-8. Do not modify it.
+     * @param id File Id
+     * @return Encoded Name
+     */
+    public byte[] getNameBytes(int id) {
+        return names[id].utf8;
+    }
+
+    private static class Name {
+        private final String name;
+        private final byte[] utf8;
+
+        private Name(String name) {
+            this.name = name;
+            this.utf8 = name.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
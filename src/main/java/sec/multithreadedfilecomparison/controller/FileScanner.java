@@ -1,44 +1,103 @@
 package sec.multithreadedfilecomparison.controller;
 
+import sec.multithreadedfilecomparison.helper.Helpers;
 import sec.multithreadedfilecomparison.model.FileItem;
+import sec.multithreadedfilecomparison.model.FileMetadata;
+import sec.multithreadedfilecomparison.model.StoredContent;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class's responsibility is to:
  * Scan the given directory tree for all files.
  * Provided the file is not empty, and it ends in one of the user configured suffixes, then
  * extract the text and submit it to a blocking queue for other threads to access.
+ * By default one thread walks and reads; in parallel mode subtrees are walked
+ * on a work-stealing pool and files are read by a separate pool of readers.
  */
 public class FileScanner implements Runnable {
 
     private static final String THREAD_NAME = "file-scanner-thread";
     private static final FileItem POISON = new FileItem();
     private static final int QUEUE_CAP = 10;
+    private static final String FAILED_READ_TEXT = "ERR: *Failed to extract file text*";
     private Thread thread;
     private File directoryPath;
     private Set<String> suffixes;
-    private BlockingQueue<FileItem> fileQueue;
-    private int numFilesInDirectory;
+    private TunableBlockingQueue<FileItem> fileQueue;
+    private AtomicInteger numFilesInDirectory;
+    private ContentStore contentStore;
+    private int walkerThreads;
+    private int readerThreads;
 
     public FileScanner(File directoryPath) {
         this.directoryPath = directoryPath;
         this.suffixes = Set.of("txt");
-        this.fileQueue = new ArrayBlockingQueue<FileItem>(QUEUE_CAP);
-        this.numFilesInDirectory = 0;
+        this.fileQueue = new TunableBlockingQueue<FileItem>(QUEUE_CAP);
+        this.numFilesInDirectory = new AtomicInteger();
+        this.contentStore = null;
+        this.walkerThreads = 1;
+        this.readerThreads = 1;
     }
 
     public FileScanner(File directoryPath, Set<String> suffixes) {
         this.directoryPath = directoryPath;
         this.suffixes = suffixes;
-        this.fileQueue = new ArrayBlockingQueue<FileItem>(QUEUE_CAP);
-        this.numFilesInDirectory = 0;
+        this.fileQueue = new TunableBlockingQueue<FileItem>(QUEUE_CAP);
+        this.numFilesInDirectory = new AtomicInteger();
+        this.contentStore = null;
+        this.walkerThreads = 1;
+        this.readerThreads = 1;
+    }
+
+    /**
+     * Keep file contents off the heap instead of reading them into Strings.
+     * Files are memory-mapped up to the given budget, and read again from
+     * disk when needed past it. Call before start().
+     * @param offHeapBudget Most bytes to keep mapped at once
+     */
+    public void useStoredContent(long offHeapBudget) {
+        this.contentStore = new ContentStore(offHeapBudget);
+    }
+
+    /**
+     * Walk and read in parallel. With one walker and one reader (the default)
+     * the scan runs on the scanner thread alone. Call before start().
+     * @param walkerThreads Threads walking the directory tree
+     * @param readerThreads Threads reading file contents
+     */
+    public void setParallelism(int walkerThreads, int readerThreads) {
+        if (walkerThreads < 1 || readerThreads < 1) {
+            throw new IllegalArgumentException("Scanner thread counts must be at least 1");
+        }
+
+        this.walkerThreads = walkerThreads;
+        this.readerThreads = readerThreads;
+    }
+
+    /**
+     * Set how many files may wait for the Comparator. With maxCapacity above
+     * capacity the queue tunes its own depth within that range. Call before start().
+     * @param capacity Queue capacity
+     * @param maxCapacity Largest capacity auto-tuning may grow to
+     */
+    public void setQueueCapacity(int capacity, int maxCapacity) {
+        this.fileQueue = new TunableBlockingQueue<FileItem>(capacity, maxCapacity);
     }
 
     /**
@@ -81,13 +140,13 @@ public class FileScanner implements Runnable {
      * @throws InterruptedException Interrupt
      */
     public int getNumFilesInDirectory() {
-        return numFilesInDirectory;
+        return numFilesInDirectory.get();
     }
 
     /**
      * Read and extract the contents of a file.
      * @param path Target File
-     * @return File Contents
+     * @return File Contents, or null if the file could not be read
      * @throws IOException Reading Error
      */
     private String readFileContents(Path path) {
@@ -96,12 +155,109 @@ public class FileScanner implements Runnable {
             content = Files.readString(path);
         } catch (IOException e) {
             System.out.println("File Scanner ERROR: " + e.getMessage());
-            content = "ERR: *Failed to extract file text*";
+            content = null;
         }
 
         return content;
     }
 
+    /**
+     * Build the FileItem for a matching file: its contents read into memory,
+     * or kept off-heap if a content store is in use.
+     * @param path Target File
+     * @param attrs File Attributes
+     * @param fileName File Name
+     * @return File Item, or null if the file is empty
+     */
+    private FileItem loadFile(Path path, BasicFileAttributes attrs, String fileName) {
+        FileItem fileItem = null;
+        if (contentStore != null) {
+            if (attrs.size() > 0) {
+                StoredContent stored = contentStore.store(path, attrs.size());
+                long hash = 0;
+                boolean readFailed = false;
+                try {
+                    hash = Helpers.contentHash(stored.readBytes());
+                } catch (IOException e) {
+                    System.out.println("File Scanner ERROR: " + e.getMessage());
+                    readFailed = true;
+                }
+                fileItem = new FileItem(numFilesInDirectory.getAndIncrement(), fileName, stored,
+                        describe(path, attrs, hash, readFailed));
+            }
+
+        } else {
+            String flContents = readFileContents(path);
+            if (flContents == null) {
+                fileItem = new FileItem(numFilesInDirectory.getAndIncrement(), fileName, FAILED_READ_TEXT,
+                        describe(path, attrs, 0, true));
+            } else if (!flContents.isEmpty()) {
+                long hash = Helpers.contentHash(ByteBuffer.wrap(flContents.getBytes(StandardCharsets.UTF_8)));
+                fileItem = new FileItem(numFilesInDirectory.getAndIncrement(), fileName, flContents,
+                        describe(path, attrs, hash, false));
+            }
+        }
+
+        return fileItem;
+    }
+
+    /**
+     * Record where a file is (relative to the scanned directory) and what it held.
+     * @param path Target File
+     * @param attrs File Attributes
+     * @param contentHash Content Hash
+     * @param readFailed Whether the file could not be read
+     * @return File Metadata
+     */
+    private FileMetadata describe(Path path, BasicFileAttributes attrs, long contentHash, boolean readFailed) {
+        String relativePath = Paths.get(directoryPath.getPath()).relativize(path).toString();
+        return new FileMetadata(
+                relativePath, attrs.size(), attrs.lastModifiedTime().toMillis(), contentHash, readFailed);
+    }
+
+    /**
+     * Split a file name into its name and suffix.
+     * @param path Target File
+     * @return Name elements, or null if the suffix is not wanted
+     */
+    private String[] matchSuffix(Path path) {
+        String[] elements = path.getFileName().toString().split("\\.");
+        if (elements.length >= 2 && suffixes.contains(elements[1])) {
+            return elements;
+        }
+
+        return null;
+    }
+
+    /**
+     * Walk the tree on a work-stealing pool, handing each matching file to a
+     * reader pool that loads it and pushes it to the queue.
+     * Returns once every file has been queued.
+     * @throws InterruptedException Interrupt
+     */
+    private void scanInParallel() throws InterruptedException {
+        ForkJoinPool walkPool = new ForkJoinPool(walkerThreads);
+        ExecutorService readPool = Executors.newFixedThreadPool(readerThreads);
+
+        try {
+            walkPool.submit(new DirectoryWalk(Paths.get(directoryPath.getPath()), readPool)).get();
+            readPool.shutdown();
+            readPool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+        } catch (ExecutionException e) {
+            System.out.println("File Scanner ERROR: " + e.getCause().getMessage());
+            readPool.shutdown();
+            readPool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+        } catch (InterruptedException e) {
+            readPool.shutdownNow();
+            throw e;
+
+        } finally {
+            walkPool.shutdownNow();
+        }
+    }
+
     /**
      * Scan through the directory tree and stop at each file.
      * If the suffix is ok, extract the contents and push it to the queue.
@@ -112,24 +268,27 @@ public class FileScanner implements Runnable {
 
         try {
             try {
-                Files.walkFileTree(Paths.get(directoryPath.getPath()), new SimpleFileVisitor<Path>() {
-                    @Override
-                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                        try {
-                            String[] elements = file.getFileName().toString().split("\\.");
-                            if (elements.length >= 2 && suffixes.contains(elements[1])) {
-                                String flContents = readFileContents(file); // skip empty files
-                                if (!flContents.isEmpty()) {
-                                    fileQueue.put(new FileItem(elements[0], flContents));
-                                    numFilesInDirectory++;
+                if (walkerThreads > 1 || readerThreads > 1) {
+                    scanInParallel();
+                } else {
+                    Files.walkFileTree(Paths.get(directoryPath.getPath()), new SimpleFileVisitor<Path>() {
+                        @Override
+                        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                            try {
+                                String[] elements = matchSuffix(file);
+                                if (elements != null) {
+                                    FileItem fileItem = loadFile(file, attrs, elements[0]); // skip empty files
+                                    if (fileItem != null) {
+                                        fileQueue.put(fileItem);
+                                    }
                                 }
-                            }
 
-                        } catch (InterruptedException e) {}
+                            } catch (InterruptedException e) {}
 
-                        return FileVisitResult.CONTINUE;
-                    }
-                });
+                            return FileVisitResult.CONTINUE;
+                        }
+                    });
+                }
 
             } catch (IOException e) {
                 System.out.println("File Scanner ERROR: " + e.getMessage());
@@ -140,6 +299,63 @@ public class FileScanner implements Runnable {
 
         } catch (InterruptedException e) {}
 
+        if (fileQueue.isAutoTuned()) {
+            System.out.println("File queue ended at capacity " + fileQueue.getCapacity() +
+                    " after " + fileQueue.getNumRetunes() + " adjustment(s)");
+        }
         System.out.println("Stopping File Scanner... ");
     }
+
+    /**
+     * Lists one directory: sub-directories become new walk tasks, matching
+     * files are handed to the reader pool.
+     */
+    private class DirectoryWalk extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final Path directory;
+        private final ExecutorService readPool;
+
+        public DirectoryWalk(Path directory, ExecutorService readPool) {
+            this.directory = directory;
+            this.readPool = readPool;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryWalk> subWalks = new ArrayList<DirectoryWalk>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attrs = Files.readAttributes(
+                            entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+
+                    if (attrs.isDirectory()) {
+                        DirectoryWalk subWalk = new DirectoryWalk(entry, readPool);
+                        subWalk.fork();
+                        subWalks.add(subWalk);
+
+                    } else {
+                        String[] elements = matchSuffix(entry);
+                        if (elements != null) {
+                            readPool.execute(() -> {
+                                try {
+                                    FileItem fileItem = loadFile(entry, attrs, elements[0]); // skip empty files
+                                    if (fileItem != null) {
+                                        fileQueue.put(fileItem);
+                                    }
+                                } catch (InterruptedException e) { /*Scan Stopped*/ }
+                            });
+                        }
+                    }
+                }
+
+            } catch (IOException e) {
+                System.out.println("File Scanner ERROR: " + e.getMessage());
+            }
+
+            for (DirectoryWalk subWalk : subWalks) {
+                subWalk.join();
+            }
+        }
+    }
 }
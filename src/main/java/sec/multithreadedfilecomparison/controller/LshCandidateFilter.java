@@ -0,0 +1,152 @@
+package sec.multithreadedfilecomparison.controller;
+
+import sec.multithreadedfilecomparison.helper.MinHasher;
+import sec.multithreadedfilecomparison.model.PreparedContent;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class's responsibility is to:
+ * Cut down the number of pairs sent for exact LCS comparison.
+ * Each file gets a MinHash signature, which is split into bands; files sharing
+ * an identical band land in the same bucket and become candidate pairs.
+ * The band layout is picked so that pairs whose shingle Jaccard similarity
+ * is around the threshold have an even chance of being caught; more similar
+ * pairs are almost always caught, less similar ones rarely.
+ * The threshold and estimates are Jaccard similarities of the files' sets of
+ * SHINGLE_SIZE-character shingles, not the LCS similarity the results hold.
+ * The two are not the same scale: every scattered edit breaks up to
+ * SHINGLE_SIZE shingles, so a pair at LCS similarity s shares roughly
+ * q = s^SHINGLE_SIZE of its shingles and has a Jaccard similarity of about
+ * q / (2 - q), e.g. 0.42 at s = 0.9 and 0.13 at s = 0.75.
+ * Only the comparator thread uses an instance, so it is not thread-safe.
+ */
+public class LshCandidateFilter {
+
+    public static final int SHINGLE_SIZE = 5;
+    private static final int DEFAULT_NUM_HASHES = 128;
+    private final double jaccardThreshold;
+    private final MinHasher minHasher;
+    private final int numBands;
+    private final int rowsPerBand;
+    private final List<int[]> signatures;
+    private final List<Map<Long, List<Integer>>> bandBuckets;
+
+    /**
+     * @param jaccardThreshold Shingle Jaccard similarity to catch pairs from (not LCS similarity)
+     */
+    public LshCandidateFilter(double jaccardThreshold) {
+        this(jaccardThreshold, DEFAULT_NUM_HASHES, SHINGLE_SIZE);
+    }
+
+    public LshCandidateFilter(double jaccardThreshold, int numHashes, int shingleSize) {
+        if (jaccardThreshold <= 0.0 || jaccardThreshold > 1.0) {
+            throw new IllegalArgumentException("Jaccard threshold must be in (0, 1]");
+        }
+
+        this.jaccardThreshold = jaccardThreshold;
+        this.minHasher = new MinHasher(numHashes, shingleSize);
+        this.rowsPerBand = chooseRowsPerBand(jaccardThreshold, numHashes);
+        this.numBands = numHashes / rowsPerBand;
+        this.signatures = new ArrayList<int[]>();
+        this.bandBuckets = new ArrayList<Map<Long, List<Integer>>>();
+        for (int ii=0; ii<numBands; ii++) {
+            bandBuckets.add(new HashMap<Long, List<Integer>>());
+        }
+    }
+
+    /**
+     * Find the previously added files that may be similar to a new file,
+     * then add the new file to the index. Files are identified by their
+     * position in insertion order.
+     * @param newContent New File's Prepared Contents
+     * @return Positions of candidate partners, each listed once
+     */
+    public List<Integer> addAndFindCandidates(PreparedContent newContent) {
+        int[] sig = minHasher.signature(CharBuffer.wrap(newContent.getContent()));
+        int newIndex = signatures.size();
+        boolean[] seen = new boolean[newIndex];
+        List<Integer> candidates = new ArrayList<Integer>();
+
+        for (int band=0; band<numBands; band++) {
+            long key = bandKey(sig, band);
+            List<Integer> bucket = bandBuckets.get(band).computeIfAbsent(key, k -> new ArrayList<Integer>(2));
+            for (int pastIndex : bucket) {
+                if (!seen[pastIndex]) {
+                    seen[pastIndex] = true;
+                    candidates.add(pastIndex);
+                }
+            }
+            bucket.add(newIndex);
+        }
+
+        signatures.add(sig);
+        return candidates;
+    }
+
+    /**
+     * Estimated shingle Jaccard similarity of two indexed files, from their signatures.
+     * @param index1 Position of file 1 in insertion order
+     * @param index2 Position of file 2 in insertion order
+     * @return Estimated Jaccard Similarity
+     */
+    public double estimateJaccard(int index1, int index2) {
+        return MinHasher.estimateSimilarity(signatures.get(index1), signatures.get(index2));
+    }
+
+    /**
+     * Chance that a pair with the given true shingle Jaccard similarity
+     * becomes a candidate.
+     * @param jaccard Jaccard Similarity
+     * @return Probability
+     */
+    public double catchProbability(double jaccard) {
+        return 1.0 - Math.pow(1.0 - Math.pow(jaccard, rowsPerBand), numBands);
+    }
+
+    public double getJaccardThreshold() {
+        return jaccardThreshold;
+    }
+
+    public int getNumBands() {
+        return numBands;
+    }
+
+    public int getRowsPerBand() {
+        return rowsPerBand;
+    }
+
+    /**
+     * Pick the band height whose S-curve midpoint, (1/b)^(1/r), is closest
+     * to the threshold.
+     */
+    private static int chooseRowsPerBand(double threshold, int numHashes) {
+        int best = 1;
+        double bestDiff = Double.MAX_VALUE;
+        for (int rows=1; rows<=numHashes; rows++) {
+            int bands = numHashes / rows;
+            double midpoint = Math.pow(1.0 / bands, 1.0 / rows);
+            double diff = Math.abs(midpoint - threshold);
+            if (diff < bestDiff) {
+                bestDiff = diff;
+                best = rows;
+            }
+        }
+
+        return best;
+    }
+
+    private long bandKey(int[] sig, int band) {
+        long h = band;
+        int from = band * rowsPerBand;
+        for (int ii=from; ii<from+rowsPerBand; ii++) {
+            h = h * 0x9E3779B97F4A7C15L + sig[ii];
+        }
+
+        return h;
+    }
+}
@@ -0,0 +1,397 @@
+package sec.multithreadedfilecomparison.controller;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class's responsibility is to:
+ * Remember similarity scores between sessions, keyed by the content hashes of
+ * the two files, so unchanged pairs are not compared again on the next run.
+ * The cache holds at most maxEntries scores, and forgets scores not used for
+ * maxAgeDays when saved. Once full, a new score replaces the least recently
+ * used of EVICTION_SAMPLES scores near it, which approximates dropping the
+ * least recently used overall.
+ * Scores are kept in primitive open-addressing tables (about 32 bytes a score,
+ * grown as needed), split into up to MAX_STRIPES stripes by hash, each with its own
+ * lock, so comparison threads looking up different pairs rarely wait on
+ * each other.
+ * A cache only holds one kind of score (e.g. char-level LCS); a file written
+ * for another kind is ignored.
+ */
+public class PairScoreCache {
+
+    public static final String DEFAULT_FILE = "pair-scores.cache";
+    public static final String CHAR_LCS = "char-lcs";
+    public static final int DEFAULT_MAX_ENTRIES = 2_000_000;
+    public static final int DEFAULT_MAX_AGE_DAYS = 30;
+    private static final int MAGIC = 0x4D464350; // "MFCP"
+    private static final int VERSION = 1;
+    private static final int MAX_STRIPES = 16; // a power of two
+    private static final int EVICTION_SAMPLES = 8;
+    private final File cacheFile;
+    private final String scoreKind;
+    private final long maxAgeMillis;
+    private final Stripe[] stripes;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    public PairScoreCache(File cacheFile, String scoreKind, int maxEntries, int maxAgeDays) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("A score cache must hold at least 1 score");
+        }
+        this.cacheFile = cacheFile;
+        this.scoreKind = scoreKind;
+        this.maxAgeMillis = TimeUnit.DAYS.toMillis(maxAgeDays);
+        this.stripes = new Stripe[Math.min(MAX_STRIPES, Integer.highestOneBit(maxEntries))];
+        for (int ii=0; ii<stripes.length; ii++) {
+            stripes[ii] = new Stripe(maxEntries / stripes.length + (ii < maxEntries % stripes.length ? 1 : 0));
+        }
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+    }
+
+    /**
+     * Look up the score of two files' contents.
+     * @param hash1 Content hash of file 1
+     * @param hash2 Content hash of file 2
+     * @return Score, or null if not cached
+     */
+    public Double get(long hash1, long hash2) {
+        long low = Math.min(hash1, hash2);
+        long high = Math.max(hash1, hash2);
+        long mixed = mix(low, high);
+        Stripe stripe = stripeFor(mixed);
+        double score;
+        stripe.lock.lock();
+        try {
+            score = stripe.get(low, high, mixed, System.currentTimeMillis());
+        } finally {
+            stripe.lock.unlock();
+        }
+
+        if (Double.isNaN(score)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return score;
+    }
+
+    public void put(long hash1, long hash2, double score) {
+        put(hash1, hash2, score, System.currentTimeMillis());
+    }
+
+    private void put(long hash1, long hash2, double score, long lastUsed) {
+        long low = Math.min(hash1, hash2);
+        long high = Math.max(hash1, hash2);
+        long mixed = mix(low, high);
+        Stripe stripe = stripeFor(mixed);
+        stripe.lock.lock();
+        try {
+            stripe.put(low, high, mixed, score, lastUsed);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.size;
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    public String getSummary() {
+        return String.format("Score cache: %d hits, %d misses, %d entries", hits.get(), misses.get(), size());
+    }
+
+    /**
+     * The usual cache file for a kind of score, in the working directory.
+     * Each kind gets its own file, since a file only holds one kind.
+     * @param scoreKind Kind of score, e.g. ComparisonMode.getScoreKind()
+     * @return Cache File
+     */
+    public static File defaultFileFor(String scoreKind) {
+        if (scoreKind.equals(CHAR_LCS)) {
+            return new File(DEFAULT_FILE);
+        }
+        return new File("pair-scores-" + scoreKind + ".cache");
+    }
+
+    /**
+     * Read the cache file, if there is one for this kind of score.
+     */
+    public void load() {
+        if (cacheFile.length() == 0) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(scoreKind)) {
+                System.out.println("Score cache " + cacheFile + " is for something else; starting empty");
+                return;
+            }
+
+            int count = in.readInt();
+            for (int ii=0; ii<count; ii++) {
+                long low = in.readLong();
+                long high = in.readLong();
+                double score = in.readDouble();
+                long lastUsed = in.readLong();
+                if (now - lastUsed <= maxAgeMillis) {
+                    put(low, high, score, lastUsed);
+                }
+            }
+
+        } catch (EOFException e) {
+            System.out.println("Score cache " + cacheFile + " is truncated; keeping what was read");
+        } catch (IOException e) {
+            System.out.println("Score cache ERROR: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write the cache file, leaving out entries past their age.
+     * Written to a temporary file and moved into place.
+     */
+    public void save() {
+        long now = System.currentTimeMillis();
+        File tmpFile = new File(cacheFile.getPath() + ".tmp");
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+        }
+        try {
+            int count = 0;
+            for (Stripe stripe : stripes) {
+                stripe.removeOlderThan(now - maxAgeMillis);
+                count += stripe.size;
+            }
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(scoreKind);
+                out.writeInt(count);
+                for (Stripe stripe : stripes) {
+                    for (int slot=0; slot<stripe.lastUsed.length; slot++) {
+                        if (stripe.lastUsed[slot] != Stripe.EMPTY) {
+                            out.writeLong(stripe.lows[slot]);
+                            out.writeLong(stripe.highs[slot]);
+                            out.writeDouble(stripe.scores[slot]);
+                            out.writeLong(stripe.lastUsed[slot]);
+                        }
+                    }
+                }
+            }
+            Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        } catch (IOException e) {
+            System.out.println("Score cache ERROR: " + e.getMessage());
+        } finally {
+            for (Stripe stripe : stripes) {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    private Stripe stripeFor(long mixed) {
+        return stripes[(int)(mixed >>> 32) & (stripes.length - 1)];
+    }
+
+    /**
+     * Hash of an unordered pair of content hashes (low <= high).
+     */
+    private static long mix(long low, long high) {
+        long h = low * 0x9E3779B97F4A7C15L + high;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * One stripe of the cache: a linear-probing table of (low hash, high hash,
+     * score, last used) in parallel arrays. A slot is empty when its last-used
+     * time is EMPTY. Guarded by its lock.
+     */
+    private static class Stripe {
+        private static final long EMPTY = 0;
+        private static final int INITIAL_SLOTS = 64;
+        private static final double MAX_LOAD = 0.75;
+        private final ReentrantLock lock;
+        private final int maxEntries;
+        private final int maxSlots;
+        private long[] lows;
+        private long[] highs;
+        private double[] scores;
+        private long[] lastUsed;
+        private int size;
+
+        private Stripe(int maxEntries) {
+            this.lock = new ReentrantLock();
+            this.maxEntries = maxEntries;
+            this.maxSlots = (int)Math.min(Integer.MAX_VALUE - 8, (long)(maxEntries / MAX_LOAD) + 1);
+            allocate(Math.min(INITIAL_SLOTS, maxSlots));
+            this.size = 0;
+        }
+
+        private void allocate(int slots) {
+            lows = new long[slots];
+            highs = new long[slots];
+            scores = new double[slots];
+            lastUsed = new long[slots];
+        }
+
+        /**
+         * @return Score, or NaN if not cached
+         */
+        private double get(long low, long high, long mixed, long now) {
+            int slot = find(low, high, mixed);
+            if (slot < 0) {
+                return Double.NaN;
+            }
+            lastUsed[slot] = now;
+            return scores[slot];
+        }
+
+        private void put(long low, long high, long mixed, double score, long used) {
+            int slot = find(low, high, mixed);
+            if (slot < 0) {
+                if (size >= maxEntries) {
+                    removeAt(leastRecentlyUsedNear(home(mixed, lows.length)));
+                } else if (size + 1 > lows.length * MAX_LOAD && lows.length < maxSlots) {
+                    resize((int)Math.min(maxSlots, lows.length * 2L));
+                }
+                slot = -1 - find(low, high, mixed);
+                lows[slot] = low;
+                highs[slot] = high;
+                size++;
+            }
+            scores[slot] = score;
+            lastUsed[slot] = Math.max(used, 1); // never EMPTY
+        }
+
+        /**
+         * @return The pair's slot, or (-1 - the empty slot it would go in)
+         */
+        private int find(long low, long high, long mixed) {
+            int slot = home(mixed, lows.length);
+            while (lastUsed[slot] != EMPTY) {
+                if (lows[slot] == low && highs[slot] == high) {
+                    return slot;
+                }
+                slot = next(slot);
+            }
+            return -1 - slot;
+        }
+
+        /**
+         * The least recently used of the first EVICTION_SAMPLES occupied
+         * slots from a starting slot. The stripe must not be empty.
+         */
+        private int leastRecentlyUsedNear(int start) {
+            int victim = -1;
+            int sampled = 0;
+            for (int slot=start; sampled<EVICTION_SAMPLES; slot=next(slot)) {
+                if (lastUsed[slot] != EMPTY) {
+                    if (victim < 0 || lastUsed[slot] < lastUsed[victim]) {
+                        victim = slot;
+                    }
+                    sampled++;
+                    if (sampled == size) {
+                        break;
+                    }
+                }
+            }
+            return victim;
+        }
+
+        /**
+         * Empty a slot, moving later entries of its probe run back into the
+         * gap so that every entry stays reachable from its home slot.
+         */
+        private void removeAt(int slot) {
+            int hole = slot;
+            for (int probe=next(hole); lastUsed[probe] != EMPTY; probe=next(probe)) {
+                int home = home(mix(lows[probe], highs[probe]), lows.length);
+                boolean homeAfterHole = hole <= probe ? (home > hole && home <= probe) : (home > hole || home <= probe);
+                if (!homeAfterHole) {
+                    lows[hole] = lows[probe];
+                    highs[hole] = highs[probe];
+                    scores[hole] = scores[probe];
+                    lastUsed[hole] = lastUsed[probe];
+                    hole = probe;
+                }
+            }
+            lastUsed[hole] = EMPTY;
+            size--;
+        }
+
+        private void removeOlderThan(long oldest) {
+            int kept = 0;
+            for (long used : lastUsed) {
+                if (used != EMPTY && used >= oldest) {
+                    kept++;
+                }
+            }
+            if (kept < size) {
+                rehash(lows.length, oldest);
+            }
+        }
+
+        private void resize(int slots) {
+            rehash(slots, Long.MIN_VALUE);
+        }
+
+        /**
+         * Move the entries last used at or after a time into tables of a new size.
+         */
+        private void rehash(int slots, long oldest) {
+            long[] oldLows = lows;
+            long[] oldHighs = highs;
+            double[] oldScores = scores;
+            long[] oldLastUsed = lastUsed;
+            allocate(slots);
+            size = 0;
+            for (int ii=0; ii<oldLastUsed.length; ii++) {
+                if (oldLastUsed[ii] != EMPTY && oldLastUsed[ii] >= oldest) {
+                    int slot = -1 - find(oldLows[ii], oldHighs[ii], mix(oldLows[ii], oldHighs[ii]));
+                    lows[slot] = oldLows[ii];
+                    highs[slot] = oldHighs[ii];
+                    scores[slot] = oldScores[ii];
+                    lastUsed[slot] = oldLastUsed[ii];
+                    size++;
+                }
+            }
+        }
+
+        private int next(int slot) {
+            return slot + 1 == lows.length ? 0 : slot + 1;
+        }
+
+        private static int home(long mixed, int slots) {
+            return (int)(((mixed & 0xFFFFFFFFL) * slots) >>> 32);
+        }
+    }
+}
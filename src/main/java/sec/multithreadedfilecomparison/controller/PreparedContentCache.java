@@ -0,0 +1,102 @@
+package sec.multithreadedfilecomparison.controller;
+
+import sec.multithreadedfilecomparison.model.FileItem;
+import sec.multithreadedfilecomparison.model.PreparedContent;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class's responsibility is to:
+ * Keep track of which files currently hold a prepared form of their contents,
+ * and drop the least recently used ones once a memory budget is exceeded.
+ * Comparisons that already hold a prepared form keep it until they finish.
+ * Building a prepared form only locks that file, so threads preparing
+ * different files do not wait on each other; only the accounting is shared.
+ */
+public class PreparedContentCache {
+
+    private final long budgetBytes;
+    private final LinkedHashMap<Integer, ResidentContent> resident;
+    private long usedBytes;
+
+    public PreparedContentCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        this.resident = new LinkedHashMap<Integer, ResidentContent>(16, 0.75f, true);
+        this.usedBytes = 0;
+    }
+
+    /**
+     * Get the prepared form of a file's contents, building it if needed.
+     * @param fileItem File
+     * @return Prepared Content
+     */
+    public PreparedContent acquire(FileItem fileItem) {
+        if (fileItem.getFileId() == FileItem.NO_ID) {
+            return fileItem.getPreparedContent(); // untracked: nothing to key it by
+        }
+
+        // Built outside the cache's lock: reading and decoding stored contents
+        // can take a while, and only the file's own lock is needed for it
+        PreparedContent prepared = fileItem.getPreparedContent();
+        synchronized (this) {
+            ResidentContent entry = resident.get(fileItem.getFileId());
+            if (entry == null) {
+                entry = new ResidentContent(fileItem);
+                resident.put(fileItem.getFileId(), entry);
+            }
+
+            // Indexes may have been added since last time
+            long size = prepared.estimateSize();
+            usedBytes += size - entry.size;
+            entry.size = size;
+
+            evictOverBudget(fileItem);
+        }
+
+        return prepared;
+    }
+
+    /**
+     * Drop a file's prepared form, e.g. once it has no comparisons left.
+     * @param fileItem File
+     */
+    public synchronized void release(FileItem fileItem) {
+        ResidentContent entry = resident.remove(fileItem.getFileId());
+        if (entry != null) {
+            usedBytes -= entry.size;
+        }
+        fileItem.releasePreparedContent();
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Evict least recently used entries until back under budget.
+     * @param keep File that was just acquired and must stay
+     */
+    private void evictOverBudget(FileItem keep) {
+        Iterator<Map.Entry<Integer, ResidentContent>> it = resident.entrySet().iterator();
+        while (usedBytes > budgetBytes && it.hasNext()) {
+            ResidentContent entry = it.next().getValue();
+            if (entry.fileItem != keep) {
+                it.remove();
+                usedBytes -= entry.size;
+                entry.fileItem.releasePreparedContent();
+            }
+        }
+    }
+
+    private static class ResidentContent {
+        private final FileItem fileItem;
+        private long size;
+
+        private ResidentContent(FileItem fileItem) {
+            this.fileItem = fileItem;
+            this.size = 0;
+        }
+    }
+}
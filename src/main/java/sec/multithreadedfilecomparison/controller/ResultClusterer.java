@@ -0,0 +1,237 @@
+package sec.multithreadedfilecomparison.controller;
+
+import sec.multithreadedfilecomparison.helper.ConcurrentUnionFind;
+import sec.multithreadedfilecomparison.model.ComparisonPair;
+import sec.multithreadedfilecomparison.model.ComparisonResult;
+import sec.multithreadedfilecomparison.model.FileItem;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class's responsibility is to:
+ * Group files into clusters of similar files as results come in, so that
+ * nobody has to work them out from the results file afterwards.
+ * Each pair at or above the threshold joins its files' clusters in a
+ * lock-free union-find, on whichever comparison thread produced it. Every
+ * pair that joins two clusters is queued for the clusters file, as
+ *   merge,file1,file2,similarity
+ * and once the results are all in (or the thread is stopped), the final
+ * membership follows, largest cluster first, one line per file:
+ *   cluster,number,file
+ * Files with no pair at or above the threshold are left out.
+ */
+public class ResultClusterer implements Runnable {
+
+    private static final String THREAD_NAME = "result-clusterer-thread";
+    private static final ComparisonResult FINISHED = new ComparisonResult(null, 0.0);
+    private Thread thread;
+    private final String outputFileName;
+    private final double threshold;
+    private final ConcurrentUnionFind clusters;
+    private final Map<Integer, FileItem> clusteredFiles;
+    private final AtomicLong merges;
+    private final BlockingQueue<ComparisonResult> mergeQueue;
+
+    public ResultClusterer(String outputFileName, double threshold) {
+        this.outputFileName = outputFileName;
+        this.threshold = threshold;
+        this.clusters = new ConcurrentUnionFind();
+        this.clusteredFiles = new ConcurrentHashMap<Integer, FileItem>();
+        this.merges = new AtomicLong();
+        this.mergeQueue = new LinkedBlockingQueue<ComparisonResult>(); // at most one entry per file
+    }
+
+    /**
+     * The clusters file to go with a results file: results.csv -> results-clusters.csv
+     * @param resultsFileName Results File Name
+     * @return Clusters File Name
+     */
+    public static String defaultFileFor(String resultsFileName) {
+        int dot = resultsFileName.lastIndexOf('.');
+        if (dot <= 0) {
+            return resultsFileName + "-clusters.csv";
+        }
+        return resultsFileName.substring(0, dot) + "-clusters.csv";
+    }
+
+    /**
+     * Start writing the clusters file in another thread.
+     */
+    public void start() {
+        this.thread = new Thread(this, THREAD_NAME);
+        this.thread.start();
+    }
+
+    /**
+     * Safely bring the thread to a close.
+     * Merges already queued, and the membership so far, are still written.
+     */
+    public void stop() {
+        if (this.thread == null) {
+            throw new IllegalStateException(THREAD_NAME + " does not exist");
+        }
+
+        this.thread.interrupt();
+        this.thread = null;
+    }
+
+    /**
+     * Stop the thread, and wait until the clusters file is written and closed.
+     * @throws InterruptedException Interrupt
+     */
+    public void stopAndWait() throws InterruptedException {
+        Thread clustererThread = this.thread;
+        stop();
+        clustererThread.join();
+    }
+
+    /**
+     * Take in a result. Thread-safe and lock-free, apart from the queue
+     * the occasional merge goes on.
+     * @param result The Result
+     */
+    public void add(ComparisonResult result) {
+        add(result.getComparisonPair(), result.getSimilarity(), result);
+    }
+
+    /**
+     * Take in a pair's result. A ComparisonResult is only made for the
+     * occasional pair that merges two clusters.
+     * @param comparisonPair Pair
+     * @param similarity Similarity
+     */
+    public void add(ComparisonPair comparisonPair, double similarity) {
+        add(comparisonPair, similarity, null);
+    }
+
+    private void add(ComparisonPair comparisonPair, double similarity, ComparisonResult result) {
+        if (similarity < threshold) {
+            return;
+        }
+
+        FileItem file1 = comparisonPair.getFile1();
+        FileItem file2 = comparisonPair.getFile2();
+        if (file1.getFileId() < 0 || file2.getFileId() < 0) {
+            return;
+        }
+
+        if (clusters.union(file1.getFileId(), file2.getFileId())) {
+            clusteredFiles.putIfAbsent(file1.getFileId(), file1);
+            clusteredFiles.putIfAbsent(file2.getFileId(), file2);
+            merges.incrementAndGet();
+            mergeQueue.add(result != null ? result : new ComparisonResult(comparisonPair, similarity));
+        }
+    }
+
+    /**
+     * No more results will come: write the final membership, and end the thread.
+     */
+    public void finish() {
+        mergeQueue.add(FINISHED);
+    }
+
+    /**
+     * Clusters of two or more files so far.
+     * @return Cluster Count
+     */
+    public long getNumClusters() {
+        return Math.max(0, clusteredFiles.size() - merges.get());
+    }
+
+    /**
+     * Files in a cluster so far.
+     * @return File Count
+     */
+    public long getNumClusteredFiles() {
+        return clusteredFiles.size();
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Keep writing merges as they are queued, until finished or interrupted.
+     */
+    @Override
+    public void run() {
+        System.out.println("Starting Result Clusterer... ");
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(outputFileName), StandardCharsets.UTF_8))) {
+
+            try {
+                ComparisonResult merge = mergeQueue.take();
+                while (merge != FINISHED) {
+                    writeMerge(writer, merge);
+                    if (mergeQueue.isEmpty()) {
+                        writer.flush(); // keep the file current while idle
+                    }
+                    merge = mergeQueue.take();
+                }
+
+            } catch (InterruptedException e) {
+                // Stopped early: write what has been merged so far
+                List<ComparisonResult> remaining = new ArrayList<ComparisonResult>();
+                mergeQueue.drainTo(remaining);
+                for (ComparisonResult merge : remaining) {
+                    if (merge != FINISHED) {
+                        writeMerge(writer, merge);
+                    }
+                }
+            }
+
+            writeMembership(writer);
+
+        } catch (IOException e) {
+            System.out.println("Result Clusterer ERROR: " + e.getMessage());
+        }
+
+        System.out.println(String.format(
+                "Stopping Result Clusterer... (%d cluster(s) of %d file(s) at similarity %.2f or more)",
+                getNumClusters(), getNumClusteredFiles(), threshold
+        ));
+    }
+
+    private static void writeMerge(Writer writer, ComparisonResult merge) throws IOException {
+        writer.write("merge," +
+                merge.getComparisonPair().getFile1Name() + "," +
+                merge.getComparisonPair().getFile2Name() + "," +
+                merge.getSimilarity() + "\n");
+    }
+
+    /**
+     * Write each clustered file with its cluster's number, largest cluster
+     * first (ties in order of their first file id).
+     */
+    private void writeMembership(Writer writer) throws IOException {
+        Map<Integer, List<FileItem>> byRoot = new TreeMap<Integer, List<FileItem>>();
+        for (FileItem fileItem : clusteredFiles.values()) {
+            byRoot.computeIfAbsent(clusters.find(fileItem.getFileId()), k -> new ArrayList<FileItem>()).add(fileItem);
+        }
+
+        List<List<FileItem>> ordered = new ArrayList<List<FileItem>>(byRoot.values());
+        ordered.sort((a, b) -> Integer.compare(b.size(), a.size()));
+        int number = 1;
+        for (List<FileItem> members : ordered) {
+            members.sort((a, b) -> Integer.compare(a.getFileId(), b.getFileId()));
+            for (FileItem member : members) {
+                writer.write("cluster," + number + "," + member.getFileName() + "\n");
+            }
+            number++;
+        }
+    }
+}
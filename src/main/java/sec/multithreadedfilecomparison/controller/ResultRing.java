@@ -0,0 +1,212 @@
+package sec.multithreadedfilecomparison.controller;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded blocking buffer of results as (file1 id, file2 id, similarity)
+ * records, from the comparison threads to the Results Logger. Records live
+ * in primitive arrays allocated once, at the largest capacity the buffer
+ * may tune itself to (see CapacityTuner), and are taken off in batches into
+ * a Batch the consumer keeps, so passing a result on allocates nothing.
+ * Once the consumer has gone, close() makes producers fail rather than wait
+ * forever on a full buffer.
+ */
+public class ResultRing {
+
+    private final CapacityTuner tuner;
+    private final int[] file1Ids;
+    private final int[] file2Ids;
+    private final double[] similarities;
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final Condition notFull;
+    private int head;
+    private int size;
+    private boolean closed;
+
+    public ResultRing(int capacity, int maxCapacity) {
+        this.tuner = new CapacityTuner(capacity, maxCapacity);
+        this.file1Ids = new int[maxCapacity];
+        this.file2Ids = new int[maxCapacity];
+        this.similarities = new double[maxCapacity];
+        this.lock = new ReentrantLock();
+        this.notEmpty = lock.newCondition();
+        this.notFull = lock.newCondition();
+        this.head = 0;
+        this.size = 0;
+        this.closed = false;
+    }
+
+    public boolean isAutoTuned() {
+        return tuner.isAutoTuned();
+    }
+
+    public int getCapacity() {
+        lock.lock();
+        try {
+            return tuner.getCapacity();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getNumRetunes() {
+        lock.lock();
+        try {
+            return tuner.getNumRetunes();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add a record, waiting while the buffer is full.
+     * @param file1Id File 1 Id
+     * @param file2Id File 2 Id
+     * @param similarity Similarity
+     * @throws InterruptedException Interrupt
+     * @throws IllegalStateException if the buffer has been closed
+     */
+    public void put(int file1Id, int file2Id, double similarity) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            if (size >= tuner.getCapacity()) {
+                long start = System.nanoTime();
+                while (size >= tuner.getCapacity() && !closed) {
+                    notFull.await();
+                }
+                tuner.producerWaited(System.nanoTime() - start);
+            }
+            if (closed) {
+                throw new IllegalStateException("Results are no longer being taken");
+            }
+
+            int tail = (head + size) % file1Ids.length;
+            file1Ids[tail] = file1Id;
+            file2Ids[tail] = file2Id;
+            similarities[tail] = similarity;
+            size++;
+            tuner.added(size);
+            notEmpty.signal();
+            retuneIfDue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait up to a timeout for records, then take as many as the batch holds.
+     * @param batch Batch to fill (emptied first)
+     * @param timeout Longest to wait
+     * @param unit Timeout Unit
+     * @return Records taken; 0 if none came in time
+     * @throws InterruptedException Interrupt
+     */
+    public int poll(Batch batch, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            if (size == 0) {
+                long start = System.nanoTime();
+                while (size == 0 && nanos > 0) {
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+                tuner.consumerWaited(System.nanoTime() - start);
+            }
+            return takeInto(batch);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take as many records as the batch holds, without waiting.
+     * @param batch Batch to fill (emptied first)
+     * @return Records taken
+     */
+    public int drainTo(Batch batch) {
+        lock.lock();
+        try {
+            return takeInto(batch);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take no more records: put() fails from now on, including for any
+     * producer waiting on a full buffer. Records already in can still be taken.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int takeInto(Batch batch) {
+        int taken = Math.min(size, batch.file1Ids.length);
+        for (int ii=0; ii<taken; ii++) {
+            int slot = (head + ii) % file1Ids.length;
+            batch.file1Ids[ii] = file1Ids[slot];
+            batch.file2Ids[ii] = file2Ids[slot];
+            batch.similarities[ii] = similarities[slot];
+        }
+        batch.size = taken;
+        head = (head + taken) % file1Ids.length;
+        size -= taken;
+
+        if (taken > 0) {
+            notFull.signalAll();
+        }
+        retuneIfDue();
+        return taken;
+    }
+
+    /**
+     * Adjust the capacity from the last window's waiting. Lock must be held.
+     */
+    private void retuneIfDue() {
+        if (tuner.retuneIfDue(size)) {
+            notFull.signalAll();
+        }
+    }
+
+    /**
+     * Records taken off the buffer, in arrays the consumer reuses.
+     */
+    public static class Batch {
+        private final int[] file1Ids;
+        private final int[] file2Ids;
+        private final double[] similarities;
+        private int size;
+
+        public Batch(int capacity) {
+            this.file1Ids = new int[capacity];
+            this.file2Ids = new int[capacity];
+            this.similarities = new double[capacity];
+            this.size = 0;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int getFile1Id(int index) {
+            return file1Ids[index];
+        }
+
+        public int getFile2Id(int index) {
+            return file2Ids[index];
+        }
+
+        public double getSimilarity(int index) {
+            return similarities[index];
+        }
+    }
+}
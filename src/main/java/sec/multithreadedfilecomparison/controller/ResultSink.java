@@ -0,0 +1,41 @@
+package sec.multithreadedfilecomparison.controller;
+
+import java.io.IOException;
+
+/**
+ * Where the Results Logger writes results to; one per output format.
+ * Files are named from the logger's FileNameTable.
+ * Only ever used from the logger thread.
+ */
+public interface ResultSink extends AutoCloseable {
+
+    /**
+     * Write one result.
+     * @param file1Id File 1 Id
+     * @param file2Id File 2 Id
+     * @param similarity Similarity
+     * @throws IOException Writing Error
+     */
+    void write(int file1Id, int file2Id, double similarity) throws IOException;
+
+    /**
+     * Push buffered results out to the operating system.
+     * @throws IOException Writing Error
+     */
+    void flush() throws IOException;
+
+    /**
+     * Flush, then force everything written so far onto disk.
+     * @throws IOException Writing Error
+     */
+    void sync() throws IOException;
+
+    /**
+     * Length of the results file, counting only what has been flushed.
+     * @return Length in bytes
+     */
+    long getLength();
+
+    @Override
+    void close() throws IOException;
+}
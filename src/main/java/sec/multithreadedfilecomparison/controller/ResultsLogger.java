@@ -1,40 +1,89 @@
 package sec.multithreadedfilecomparison.controller;
 
 import sec.multithreadedfilecomparison.model.ComparisonResult;
+import sec.multithreadedfilecomparison.model.FileItem;
 
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class's responsibility is to:
  * Update the results file.
+ * The file stays open for the whole session. Results are taken off the queue
+ * in batches and written through a buffer, which is flushed once enough
+ * records are pending or enough time has passed. The file is only synced to
+ * disk at checkpoints and on shutdown.
+ * Results go out as CSV by default, or in a compact binary format.
+ * Results are queued as (file1 id, file2 id, similarity) in a preallocated
+ * ResultRing, and files are named from a FileNameTable only as they are
+ * written, so logging a result allocates nothing. Register each file
+ * before logging its first result, or log ComparisonResults, which
+ * register their files as they go.
  */
 public class ResultsLogger implements Runnable {
 
     private static final String THREAD_NAME = "results-logger-thread";
-    private static final int QUEUE_CAP = 10;
+    private static final int QUEUE_CAP = 1024;
+    private static final int MAX_BATCH = 1024;
+    private static final int FLUSH_RECORDS = 4096;
+    private static final long FLUSH_INTERVAL_MS = 1000;
     private Thread thread;
     private String outputFileName;
-    private BlockingQueue<ComparisonResult> resultsQueue;
+    private OutputFormat outputFormat;
+    private ResultRing resultsQueue;
+    private final FileNameTable fileNames;
+    private volatile boolean checkpointRequested;
+    private final Object checkpointLock;
+    private List<CompletableFuture<Long>> pendingCheckpoints;
+    private boolean closed;
+    private AtomicLong resultsWritten;
+    private AtomicLong writeNanos;
+    private long startTimeNanos;
 
     public ResultsLogger(String outputFileName) {
+        this(outputFileName, OutputFormat.CSV);
+    }
+
+    public ResultsLogger(String outputFileName, OutputFormat outputFormat) {
         this.outputFileName = outputFileName;
-        this.resultsQueue = new ArrayBlockingQueue<ComparisonResult>(QUEUE_CAP);
+        this.outputFormat = outputFormat;
+        this.resultsQueue = new ResultRing(QUEUE_CAP, QUEUE_CAP);
+        this.fileNames = new FileNameTable();
+        this.checkpointRequested = false;
+        this.checkpointLock = new Object();
+        this.pendingCheckpoints = new ArrayList<CompletableFuture<Long>>();
+        this.closed = false;
+        this.resultsWritten = new AtomicLong();
+        this.writeNanos = new AtomicLong();
+        this.startTimeNanos = System.nanoTime();
+    }
+
+    /**
+     * Set how many results may wait to be written. With maxCapacity above
+     * capacity the queue tunes its own depth within that range. Call before start().
+     * @param capacity Queue capacity
+     * @param maxCapacity Largest capacity auto-tuning may grow to
+     */
+    public void setQueueCapacity(int capacity, int maxCapacity) {
+        this.resultsQueue = new ResultRing(capacity, maxCapacity);
     }
 
     /**
      * Start waiting for log requests in another thread.
      */
     public void start() {
+        this.startTimeNanos = System.nanoTime();
         this.thread = new Thread(this, THREAD_NAME);
         this.thread.start();
     }
 
     /**
      * Safely bring the thread to a close.
+     * Results already queued are still written before the file is closed.
      */
     public void stop() {
         if (this.thread == null) {
@@ -45,31 +94,154 @@ public class ResultsLogger implements Runnable {
         this.thread = null;
     }
 
+    /**
+     * Whether the thread is still running: started, and neither stopped nor
+     * ended by an error.
+     * @return true if running
+     */
+    public boolean isAlive() {
+        Thread loggerThread = this.thread;
+        return loggerThread != null && loggerThread.isAlive();
+    }
+
+    /**
+     * Stop the thread, and wait until everything queued is written and the
+     * file is closed.
+     * @throws InterruptedException Interrupt
+     */
+    public void stopAndWait() throws InterruptedException {
+        Thread loggerThread = this.thread;
+        stop();
+        loggerThread.join();
+    }
+
+    /**
+     * Make a file's name known, so results can be logged for it by id.
+     * @param fileItem File (with an id)
+     */
+    public void registerFile(FileItem fileItem) {
+        fileNames.register(fileItem);
+    }
+
     /**
      * Add a result to the queue for logging.
-     * @param comparisonResult The Result
+     * @param comparisonResult The Result (of files with ids)
      * @throws InterruptedException Interrupt
+     * @throws IllegalStateException if the logger has stopped taking results
      */
     public void putNextResult(ComparisonResult comparisonResult) throws InterruptedException {
-        resultsQueue.put(comparisonResult);
+        FileItem file1 = comparisonResult.getComparisonPair().getFile1();
+        FileItem file2 = comparisonResult.getComparisonPair().getFile2();
+        fileNames.register(file1);
+        fileNames.register(file2);
+        resultsQueue.put(file1.getFileId(), file2.getFileId(), comparisonResult.getSimilarity());
     }
 
-    private void writeComparisonResult(ComparisonResult cr) {
-        try {
-            FileWriter fileWriter = new FileWriter(outputFileName, true);
-            PrintWriter pw = new PrintWriter(fileWriter);
+    /**
+     * Add a result to the queue for logging, by the ids of registered files.
+     * @param file1Id File 1 Id
+     * @param file2Id File 2 Id
+     * @param similarity Similarity
+     * @throws InterruptedException Interrupt
+     * @throws IllegalStateException if the logger has stopped taking results
+     */
+    public void putNextResult(int file1Id, int file2Id, double similarity) throws InterruptedException {
+        resultsQueue.put(file1Id, file2Id, similarity);
+    }
 
-            // Print a new record as 'file1,file2,%'
-            pw.print(
-                    cr.getComparisonPair().getFile1Name() + "," +
-                    cr.getComparisonPair().getFile2Name() + "," +
-                    cr.getSimilarity() + "\n"
-            );
-            pw.close();
+    /**
+     * Ask for every result queued so far to be written and synced to disk.
+     * Happens on the logger thread, at its next wake-up.
+     * @return Completes, with the length of the results file as synced, once
+     *         those results are on disk; fails if the logger has already shut
+     *         down, as later results can no longer be written
+     */
+    public CompletableFuture<Long> checkpoint() {
+        synchronized (checkpointLock) {
+            if (closed) {
+                return CompletableFuture.failedFuture(new IllegalStateException(THREAD_NAME + " has stopped"));
+            }
 
+            CompletableFuture<Long> done = new CompletableFuture<Long>();
+            pendingCheckpoints.add(done);
+            checkpointRequested = true;
+            return done;
+        }
+    }
+
+    /**
+     * Take the checkpoint requests made so far.
+     * @param close Whether to refuse any further requests
+     * @return Requests
+     */
+    private List<CompletableFuture<Long>> takeCheckpoints(boolean close) {
+        synchronized (checkpointLock) {
+            closed = closed || close;
+            checkpointRequested = false;
+            List<CompletableFuture<Long>> taken = pendingCheckpoints;
+            pendingCheckpoints = new ArrayList<CompletableFuture<Long>>();
+            return taken;
+        }
+    }
+
+    /**
+     * Write everything queued, sync it, and complete the given requests
+     * with the synced length.
+     */
+    private void writeCheckpoint(ResultSink sink, ResultRing.Batch batch,
+                                 List<CompletableFuture<Long>> requests) throws IOException {
+        try {
+            while (resultsQueue.drainTo(batch) > 0) {
+                writeBatch(sink, batch);
+            }
+            sink.sync();
         } catch (IOException e) {
-            System.out.println("Result Logger ERROR: " + e.getMessage());
+            for (CompletableFuture<Long> request : requests) {
+                request.completeExceptionally(e);
+            }
+            throw e;
         }
+
+        long syncedLength = sink.getLength();
+        for (CompletableFuture<Long> request : requests) {
+            request.complete(syncedLength);
+        }
+    }
+
+    public long getResultsWritten() {
+        return resultsWritten.get();
+    }
+
+    /**
+     * Average number of results written per second since start.
+     * @return Results per second
+     */
+    public double getThroughput() {
+        double seconds = (System.nanoTime() - startTimeNanos) / 1e9;
+        return seconds > 0 ? resultsWritten.get() / seconds : 0.0;
+    }
+
+    /**
+     * Results written per second of time actually spent writing. When this
+     * is far above getThroughput() the logger is mostly idle, waiting on
+     * the comparisons, rather than holding them up.
+     * @return Results per second
+     */
+    public double getWriteRate() {
+        double seconds = writeNanos.get() / 1e9;
+        return seconds > 0 ? resultsWritten.get() / seconds : 0.0;
+    }
+
+    /**
+     * Open the results file in the chosen format.
+     * @return Result Sink
+     * @throws IOException Opening Error
+     */
+    private ResultSink openSink() throws IOException {
+        if (outputFormat == OutputFormat.BINARY) {
+            return new BinaryResultSink(outputFileName, fileNames);
+        }
+        return new CsvResultSink(outputFileName, fileNames);
     }
 
     /**
@@ -80,15 +252,87 @@ public class ResultsLogger implements Runnable {
     public void run() {
         System.out.println("Starting Results Logger... ");
 
-        try {
-            boolean running = true;
-            while (running) {
-                ComparisonResult cr = resultsQueue.take(); // wait...
-                writeComparisonResult(cr);
-            }
+        try (ResultSink sink = openSink()) {
+
+            ResultRing.Batch batch = new ResultRing.Batch(MAX_BATCH);
+            int unflushed = 0;
+            long lastFlush = System.nanoTime();
+
+            try {
+                boolean running = true;
+                while (running) {
+                    try {
+                        if (resultsQueue.poll(batch, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS) > 0) { // wait...
+                            unflushed += writeBatch(sink, batch);
+                        }
+
+                        long now = System.nanoTime();
+                        if (unflushed > 0 && (unflushed >= FLUSH_RECORDS ||
+                                now - lastFlush >= TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS))) {
+                            sink.flush();
+                            unflushed = 0;
+                            lastFlush = now;
+                        }
 
-        } catch (InterruptedException e) { /*Thread Finished*/ }
+                        if (checkpointRequested) {
+                            writeCheckpoint(sink, batch, takeCheckpoints(false));
+                            unflushed = 0;
+                            lastFlush = now;
+                        }
 
-        System.out.println("Stopping Results Logger... ");
+                    } catch (IOException e) {
+                        // Keep taking results off the queue, so the comparisons are not held up
+                        System.out.println("Result Logger ERROR: " + e.getMessage());
+                        unflushed = 0;
+                    }
+                }
+
+            } catch (InterruptedException e) { /*Thread Finished*/ }
+
+            // Write whatever is still queued, then sync
+            writeCheckpoint(sink, batch, takeCheckpoints(true));
+
+        } catch (IOException e) {
+            System.out.println("Result Logger ERROR: " + e.getMessage());
+        }
+
+        // Nothing takes results off the queue from here on
+        resultsQueue.close();
+        for (CompletableFuture<Long> request : takeCheckpoints(true)) {
+            request.completeExceptionally(new IllegalStateException(THREAD_NAME + " has stopped"));
+        }
+
+        if (resultsQueue.isAutoTuned()) {
+            System.out.println("Results queue ended at capacity " + resultsQueue.getCapacity() +
+                    " after " + resultsQueue.getNumRetunes() + " adjustment(s)");
+        }
+        System.out.println(String.format(
+                "Stopping Results Logger... (%d results, %.0f results/sec, %.0f results/sec while writing)",
+                resultsWritten.get(), getThroughput(), getWriteRate()
+        ));
+    }
+
+    /**
+     * Write a batch of results.
+     * @return Number of results written
+     */
+    private int writeBatch(ResultSink sink, ResultRing.Batch batch) throws IOException {
+        long start = System.nanoTime();
+        for (int ii=0; ii<batch.size(); ii++) {
+            sink.write(batch.getFile1Id(ii), batch.getFile2Id(ii), batch.getSimilarity(ii));
+        }
+
+        int written = batch.size();
+        resultsWritten.addAndGet(written);
+        writeNanos.addAndGet(System.nanoTime() - start);
+        return written;
+    }
+
+    /**
+     * Formats the results file can be written in.
+     */
+    public enum OutputFormat {
+        CSV,
+        BINARY
     }
 }
@@ -0,0 +1,330 @@
+package sec.multithreadedfilecomparison.controller;
+
+/**
+ * This class's responsibility is to:
+ * Decide how many threads each stage of a session gets and how deep the
+ * queues between them are, then apply that to the stages.
+ * The comparison pool defaults to one thread per available core. Anything
+ * can be overridden with a setter, or with -Dmfc.<setting>=<value> on the
+ * command line (see fromSystemProperties()).
+ * With auto-tuning on, each queue may grow up to AUTO_TUNE_GROWTH times its
+ * configured capacity when its producers and consumers keep waiting on each
+ * other, and shrinks back when they stop.
+ * With a stored-content budget set, the scanner keeps file contents off the
+ * heap (see ContentStore) rather than reading them into Strings.
+ * Clustering of similar files is off unless a cluster threshold is set, and
+ * the GUI's score cache is off unless it is given a size.
+ */
+public class RuntimeConfig {
+
+    public static final String PROPERTY_PREFIX = "mfc.";
+    private static final int DEFAULT_FILE_QUEUE_CAPACITY = 10;
+    private static final int DEFAULT_RESULTS_QUEUE_CAPACITY = 1024;
+    private static final int DEFAULT_JOBS_PER_THREAD = 32;
+    private static final int AUTO_TUNE_GROWTH = 16;
+    private static final int CONTENTS_ON_HEAP = -1;
+    private static final double CLUSTERING_OFF = -1.0;
+    private static final int SCORE_CACHE_OFF = 0;
+    private final int availableCores;
+    private int comparisonThreads;
+    private int scannerWalkers;
+    private int scannerReaders;
+    private int fileQueueCapacity;
+    private int resultsQueueCapacity;
+    private int jobsPerThread;
+    private boolean autoTuneQueues;
+    private int storedContentMb;
+    private long parallelPairCells;
+    private double clusterThreshold;
+    private int scoreCacheEntries;
+
+    public RuntimeConfig() {
+        this.availableCores = Runtime.getRuntime().availableProcessors();
+        this.comparisonThreads = availableCores;
+        this.scannerWalkers = 1;
+        this.scannerReaders = 1;
+        this.fileQueueCapacity = DEFAULT_FILE_QUEUE_CAPACITY;
+        this.resultsQueueCapacity = DEFAULT_RESULTS_QUEUE_CAPACITY;
+        this.jobsPerThread = DEFAULT_JOBS_PER_THREAD;
+        this.autoTuneQueues = false;
+        this.storedContentMb = CONTENTS_ON_HEAP;
+        this.parallelPairCells = Comparator.DEFAULT_PARALLEL_PAIR_CELLS;
+        this.clusterThreshold = CLUSTERING_OFF;
+        this.scoreCacheEntries = SCORE_CACHE_OFF;
+    }
+
+    /**
+     * Defaults, overridden by any of these system properties:
+     * mfc.comparisonThreads, mfc.scannerWalkers, mfc.scannerReaders,
+     * mfc.fileQueueCapacity, mfc.resultsQueueCapacity, mfc.jobsPerThread,
+     * mfc.autoTuneQueues, mfc.storedContentMb, mfc.parallelPairCells,
+     * mfc.clusterThreshold, mfc.scoreCacheEntries.
+     * Values that are not valid are reported and ignored.
+     * @return Config
+     */
+    public static RuntimeConfig fromSystemProperties() {
+        RuntimeConfig config = new RuntimeConfig();
+        config.comparisonThreads = intProperty("comparisonThreads", config.comparisonThreads);
+        config.scannerWalkers = intProperty("scannerWalkers", config.scannerWalkers);
+        config.scannerReaders = intProperty("scannerReaders", config.scannerReaders);
+        config.fileQueueCapacity = intProperty("fileQueueCapacity", config.fileQueueCapacity);
+        config.resultsQueueCapacity = intProperty("resultsQueueCapacity", config.resultsQueueCapacity);
+        config.jobsPerThread = intProperty("jobsPerThread", config.jobsPerThread);
+        String autoTune = System.getProperty(PROPERTY_PREFIX + "autoTuneQueues");
+        if (autoTune != null) {
+            config.autoTuneQueues = Boolean.parseBoolean(autoTune);
+        }
+        config.storedContentMb = intProperty("storedContentMb", config.storedContentMb, 0);
+        config.parallelPairCells = longProperty("parallelPairCells", config.parallelPairCells);
+        config.scoreCacheEntries = intProperty("scoreCacheEntries", config.scoreCacheEntries, 0);
+        String clusterThreshold = System.getProperty(PROPERTY_PREFIX + "clusterThreshold");
+        if (clusterThreshold != null) {
+            try {
+                config.setClusterThreshold(Double.parseDouble(clusterThreshold.trim()));
+            } catch (IllegalArgumentException e) { // includes NumberFormatException
+                System.out.println("Runtime Config ERROR: " + PROPERTY_PREFIX + "clusterThreshold=" + clusterThreshold +
+                        " is not a similarity from 0 to 1; clustering stays off");
+            }
+        }
+
+        return config;
+    }
+
+    private static int intProperty(String name, int defaultValue) {
+        return intProperty(name, defaultValue, 1);
+    }
+
+    private static int intProperty(String name, int defaultValue, int minValue) {
+        String value = System.getProperty(PROPERTY_PREFIX + name);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed >= minValue) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) { /*Reported Below*/ }
+
+        System.out.println("Runtime Config ERROR: " + PROPERTY_PREFIX + name + "=" + value +
+                " is not a whole number of at least " + minValue + "; using " + defaultValue);
+        return defaultValue;
+    }
+
+    private static long longProperty(String name, long defaultValue) {
+        String value = System.getProperty(PROPERTY_PREFIX + name);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            System.out.println("Runtime Config ERROR: " + PROPERTY_PREFIX + name + "=" + value +
+                    " is not a whole number; using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public int getAvailableCores() {
+        return availableCores;
+    }
+
+    public int getComparisonThreads() {
+        return comparisonThreads;
+    }
+
+    public void setComparisonThreads(int comparisonThreads) {
+        this.comparisonThreads = checkPositive(comparisonThreads);
+    }
+
+    public int getScannerWalkers() {
+        return scannerWalkers;
+    }
+
+    public int getScannerReaders() {
+        return scannerReaders;
+    }
+
+    public void setScannerThreads(int walkers, int readers) {
+        this.scannerWalkers = checkPositive(walkers);
+        this.scannerReaders = checkPositive(readers);
+    }
+
+    public int getFileQueueCapacity() {
+        return fileQueueCapacity;
+    }
+
+    public void setFileQueueCapacity(int fileQueueCapacity) {
+        this.fileQueueCapacity = checkPositive(fileQueueCapacity);
+    }
+
+    public int getResultsQueueCapacity() {
+        return resultsQueueCapacity;
+    }
+
+    public void setResultsQueueCapacity(int resultsQueueCapacity) {
+        this.resultsQueueCapacity = checkPositive(resultsQueueCapacity);
+    }
+
+    public int getJobsPerThread() {
+        return jobsPerThread;
+    }
+
+    /**
+     * Set how many comparison jobs per comparison thread may be queued or
+     * running at once, before the Comparator waits to submit more.
+     * @param jobsPerThread Jobs in flight per thread
+     */
+    public void setJobsPerThread(int jobsPerThread) {
+        this.jobsPerThread = checkPositive(jobsPerThread);
+    }
+
+    public boolean isAutoTuneQueues() {
+        return autoTuneQueues;
+    }
+
+    public void setAutoTuneQueues(boolean autoTuneQueues) {
+        this.autoTuneQueues = autoTuneQueues;
+    }
+
+    public boolean isStoredContent() {
+        return storedContentMb != CONTENTS_ON_HEAP;
+    }
+
+    public int getStoredContentMb() {
+        return storedContentMb;
+    }
+
+    /**
+     * Keep file contents off the heap, memory-mapping up to budgetMb of them
+     * and reading the rest from disk when needed. Zero maps nothing.
+     * @param budgetMb Most MB of contents to keep mapped at once
+     */
+    public void setStoredContentMb(int budgetMb) {
+        if (budgetMb < 0) {
+            throw new IllegalArgumentException("The stored-content budget cannot be negative");
+        }
+        this.storedContentMb = budgetMb;
+    }
+
+    public long getParallelPairCells() {
+        return parallelPairCells;
+    }
+
+    /**
+     * Set the pair size (length1 * length2) from which one pair is split
+     * across all cores rather than run on one comparison thread. Zero or
+     * less turns splitting off.
+     * @param parallelPairCells Smallest pair size to split
+     */
+    public void setParallelPairCells(long parallelPairCells) {
+        this.parallelPairCells = parallelPairCells;
+    }
+
+    public boolean isClustering() {
+        return clusterThreshold != CLUSTERING_OFF;
+    }
+
+    public double getClusterThreshold() {
+        return clusterThreshold;
+    }
+
+    /**
+     * Group files similar at or above a threshold into clusters as results
+     * come in (see ResultClusterer).
+     * @param clusterThreshold Similarity from 0 to 1
+     */
+    public void setClusterThreshold(double clusterThreshold) {
+        if (!(clusterThreshold >= 0.0 && clusterThreshold <= 1.0)) {
+            throw new IllegalArgumentException("The cluster threshold must be from 0 to 1");
+        }
+        this.clusterThreshold = clusterThreshold;
+    }
+
+    public boolean isScoreCache() {
+        return scoreCacheEntries != SCORE_CACHE_OFF;
+    }
+
+    public int getScoreCacheEntries() {
+        return scoreCacheEntries;
+    }
+
+    /**
+     * Keep scores between sessions in a PairScoreCache of up to this many
+     * pairs (about 45 bytes each when full). Zero turns the cache off.
+     * @param scoreCacheEntries Most scores to keep
+     */
+    public void setScoreCacheEntries(int scoreCacheEntries) {
+        if (scoreCacheEntries < 0) {
+            throw new IllegalArgumentException("The score cache size cannot be negative");
+        }
+        this.scoreCacheEntries = scoreCacheEntries;
+    }
+
+    /**
+     * Apply the scanner threads, file queue and where contents are kept.
+     * Call before its start().
+     * @param fileScanner File Scanner
+     */
+    public void configure(FileScanner fileScanner) {
+        fileScanner.setParallelism(scannerWalkers, scannerReaders);
+        fileScanner.setQueueCapacity(fileQueueCapacity, maxCapacity(fileQueueCapacity));
+        if (isStoredContent()) {
+            fileScanner.useStoredContent(storedContentMb * 1024L * 1024L);
+        }
+    }
+
+    /**
+     * Apply the comparison pool size, job queue and large-pair split.
+     * Call before its start().
+     * @param comparator Comparator
+     */
+    public void configure(Comparator comparator) {
+        comparator.setNumComparisonThreads(comparisonThreads);
+        comparator.setMaxJobsInFlight(comparisonThreads * jobsPerThread);
+        comparator.setParallelPairThreshold(parallelPairCells);
+    }
+
+    /**
+     * Apply the results queue. Call before its start().
+     * @param resultsLogger Results Logger
+     */
+    public void configure(ResultsLogger resultsLogger) {
+        resultsLogger.setQueueCapacity(resultsQueueCapacity, maxCapacity(resultsQueueCapacity));
+    }
+
+    private int maxCapacity(int capacity) {
+        return autoTuneQueues ? capacity * AUTO_TUNE_GROWTH : capacity;
+    }
+
+    /**
+     * One line describing the session's threads and queues, from scanner to logger.
+     * @return Topology
+     */
+    public String describeTopology() {
+        return String.format(
+                "Topology on %d core(s): scanner %d walker(s) + %d reader(s)%s -> file queue %s -> " +
+                "comparator -> job queue %d -> %d comparison thread(s) -> results queue %s -> logger",
+                availableCores, scannerWalkers, scannerReaders,
+                isStoredContent() ? " (contents off-heap, up to " + storedContentMb + " MB mapped)" : "",
+                describeQueue(fileQueueCapacity),
+                comparisonThreads * jobsPerThread, comparisonThreads, describeQueue(resultsQueueCapacity)
+        );
+    }
+
+    private String describeQueue(int capacity) {
+        if (autoTuneQueues) {
+            return capacity + " (auto-tuned up to " + maxCapacity(capacity) + ")";
+        }
+        return Integer.toString(capacity);
+    }
+
+    private static int checkPositive(int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException("Thread counts and queue capacities must be at least 1");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,455 @@
+package sec.multithreadedfilecomparison.controller;
+
+import sec.multithreadedfilecomparison.helper.ComparisonMode;
+import sec.multithreadedfilecomparison.model.FileItem;
+import sec.multithreadedfilecomparison.model.FileMetadata;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class's responsibility is to:
+ * Remember, on disk, how far a comparison session over a directory has got,
+ * so that it can carry on after a crash or a stop instead of starting again.
+ *
+ * The checkpoint is an append-only log, kept next to the results file:
+ *   header: [int MAGIC][int VERSION][UTF directory][UTF results file][UTF results format]
+ *   'F' records: [UTF relative path][long size][long mtime][long content hash],
+ *                numbered in order, one per scanned file (the manifest);
+ *   'P' records: [int file number][int file number], one per completed pair;
+ *   'C' records: [long results length], ending each commit of 'P' records,
+ *                and one straight after the header.
+ * Anything after the last 'C' record (such as a record cut short by a crash
+ * mid-write) is ignored on load.
+ *
+ * Pairs are only written as complete once the Results Logger has synced their
+ * results to disk, and each commit records how long the results file was once
+ * synced. No pair's result is logged while a commit is being made, so the
+ * results up to that length are exactly those of the committed pairs. On
+ * resume the results file is cut back to that length, dropping results logged
+ * after the last commit, as their pairs will be compared again.
+ */
+public class SessionCheckpoint {
+
+    private static final int MAGIC = 0x4D464353; // "MFCS"
+    private static final int VERSION = 2;
+    private static final byte FILE_RECORD = 'F';
+    private static final byte PAIR_RECORD = 'P';
+    private static final byte COMMIT_RECORD = 'C';
+    private static final long COMMIT_TIMEOUT_SECS = 30;
+    private final File checkpointFile;
+    private final String directory;
+    private final String resultsFileName;
+    private final String resultsFormat;
+    private final boolean resumed;
+    private final List<FileMetadata> manifest;
+    private final Map<String, Integer> manifestByPath;
+    private final Set<Long> completedPairs;
+    private List<Long> uncommittedPairs;
+    private long committedResultsLength;
+    private final ReentrantReadWriteLock commitLock;
+    private DataOutputStream out;
+    private FileOutputStream outFile;
+
+    private SessionCheckpoint(File checkpointFile, String directory, String resultsFileName,
+                              String resultsFormat, boolean resumed) {
+        this.checkpointFile = checkpointFile;
+        this.directory = directory;
+        this.resultsFileName = resultsFileName;
+        this.resultsFormat = resultsFormat;
+        this.resumed = resumed;
+        this.manifest = new ArrayList<FileMetadata>();
+        this.manifestByPath = new HashMap<String, Integer>();
+        this.completedPairs = new HashSet<Long>();
+        this.uncommittedPairs = new ArrayList<Long>();
+        this.committedResultsLength = 0;
+        this.commitLock = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Open the checkpoint for a directory's session, resuming it if one
+     * exists, or starting a new one that will log to the given results file.
+     * @param checkpointFile Checkpoint File
+     * @param directory Directory being compared
+     * @param newResultsFileName Results file to use if starting afresh
+     * @param newResultsFormat Results format to use if starting afresh
+     * @return Checkpoint
+     * @throws IOException Reading/Writing Error
+     */
+    public static SessionCheckpoint open(File checkpointFile, File directory,
+                                         String newResultsFileName, String newResultsFormat) throws IOException {
+        String dirPath = directory.getAbsolutePath();
+        SessionCheckpoint checkpoint = null;
+        if (checkpointFile.length() > 0) {
+            checkpoint = load(checkpointFile, dirPath);
+        }
+
+        if (checkpoint == null) {
+            checkpoint = new SessionCheckpoint(checkpointFile, dirPath, newResultsFileName, newResultsFormat, false);
+            checkpoint.openForAppend(true);
+        } else {
+            checkpoint.dropUncommittedResults();
+            checkpoint.openForAppend(false);
+        }
+
+        return checkpoint;
+    }
+
+    /**
+     * The usual checkpoint file for a directory: in the working directory,
+     * named after the directory's absolute path.
+     * @param directory Directory being compared
+     * @return Checkpoint File
+     */
+    public static File defaultFileFor(File directory) {
+        String key = Integer.toHexString(directory.getAbsolutePath().hashCode());
+        return new File("session-" + key + ".ckpt");
+    }
+
+    /**
+     * Like defaultFileFor(directory), but kept apart per comparison mode so
+     * that a session is only resumed in the mode it was started in.
+     * Character sessions keep the plain name.
+     * @param directory Directory being compared
+     * @param comparisonMode Comparison Mode
+     * @return Checkpoint File
+     */
+    public static File defaultFileFor(File directory, ComparisonMode comparisonMode) {
+        if (comparisonMode == ComparisonMode.CHARACTER) {
+            return defaultFileFor(directory);
+        }
+        String key = Integer.toHexString(directory.getAbsolutePath().hashCode());
+        return new File("session-" + key + "-" + comparisonMode.name().toLowerCase() + ".ckpt");
+    }
+
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    public String getResultsFileName() {
+        return resultsFileName;
+    }
+
+    public String getResultsFormat() {
+        return resultsFormat;
+    }
+
+    public synchronized int getNumCompletedPairs() {
+        return completedPairs.size();
+    }
+
+    /**
+     * Give a scanned file its number in the manifest. A file that is in the
+     * manifest already, unchanged, keeps its old number (and so its completed
+     * pairs); anything new or modified gets a new one.
+     * @param fileItem Scanned File
+     * @return Manifest Number
+     * @throws IOException Writing Error
+     */
+    public synchronized int registerFile(FileItem fileItem) throws IOException {
+        FileMetadata metadata = fileItem.getMetadata();
+        if (metadata == null) {
+            throw new IllegalArgumentException("Checkpointed sessions need file metadata from the scanner");
+        }
+
+        Integer existing = manifestByPath.get(metadata.getRelativePath());
+        if (existing != null && manifest.get(existing).sameFileAs(metadata)) {
+            return existing;
+        }
+
+        int number = manifest.size();
+        manifest.add(metadata);
+        manifestByPath.put(metadata.getRelativePath(), number);
+        writeFileRecord(out, metadata);
+        return number;
+    }
+
+    /**
+     * Whether a pair was completed in this or an earlier run of the session.
+     * @param number1 Manifest number of file 1
+     * @param number2 Manifest number of file 2
+     * @return true if complete
+     */
+    public synchronized boolean isCompleted(int number1, int number2) {
+        return completedPairs.contains(pairKey(number1, number2));
+    }
+
+    /**
+     * Hold off commits while a pair's result is handed to the Results Logger
+     * and the pair is marked complete, so that commits fall between pairs.
+     * Follow with endPair(), in a finally block.
+     */
+    public void beginPair() {
+        commitLock.readLock().lock();
+    }
+
+    public void endPair() {
+        commitLock.readLock().unlock();
+    }
+
+    /**
+     * Note that a pair's result has been handed to the Results Logger.
+     * It is written to the checkpoint at the next commit.
+     * Call between beginPair() and endPair().
+     * @param number1 Manifest number of file 1
+     * @param number2 Manifest number of file 2
+     */
+    public synchronized void markCompleted(int number1, int number2) {
+        long key = pairKey(number1, number2);
+        if (completedPairs.add(key)) {
+            uncommittedPairs.add(key);
+        }
+    }
+
+    /**
+     * Wait for the Results Logger to sync everything queued so far, then
+     * record the pairs marked before that as complete, along with the length
+     * of the synced results file.
+     * @param logger Results Logger
+     * @return Whether the commit happened
+     * @throws InterruptedException Interrupt
+     */
+    public boolean commit(ResultsLogger logger) throws InterruptedException {
+        commitLock.writeLock().lockInterruptibly();
+        try {
+            List<Long> toCommit;
+            synchronized (this) {
+                toCommit = uncommittedPairs;
+                uncommittedPairs = new ArrayList<Long>();
+            }
+
+            long syncedLength;
+            try {
+                syncedLength = logger.checkpoint().get(COMMIT_TIMEOUT_SECS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                uncommit(toCommit);
+                throw e;
+            } catch (ExecutionException | TimeoutException e) {
+                System.out.println("Session Checkpoint ERROR: results not synced, " + e.getMessage());
+                uncommit(toCommit);
+                return false;
+            }
+
+            synchronized (this) {
+                try {
+                    for (long key : toCommit) {
+                        out.writeByte(PAIR_RECORD);
+                        out.writeInt((int)(key >>> 32));
+                        out.writeInt((int)key);
+                    }
+                    writeCommitRecord(syncedLength);
+                    out.flush();
+                    outFile.getFD().sync();
+                    return true;
+
+                } catch (IOException e) {
+                    System.out.println("Session Checkpoint ERROR: " + e.getMessage());
+                    return false;
+                }
+            }
+
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The session has finished: nothing is left to resume, so remove the
+     * checkpoint file.
+     */
+    public synchronized void finish() {
+        close();
+        if (!checkpointFile.delete()) {
+            System.out.println("Session Checkpoint ERROR: could not delete " + checkpointFile);
+        }
+    }
+
+    /**
+     * Close the checkpoint, leaving it on disk to resume from.
+     */
+    public synchronized void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            System.out.println("Session Checkpoint ERROR: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Not safe to record pairs yet: leave them for a later commit.
+     */
+    private synchronized void uncommit(List<Long> pairs) {
+        pairs.addAll(uncommittedPairs);
+        uncommittedPairs = pairs;
+    }
+
+    private static long pairKey(int number1, int number2) {
+        int low = Math.min(number1, number2);
+        int high = Math.max(number1, number2);
+        return ((long)low << 32) | (high & 0xFFFFFFFFL);
+    }
+
+    private void openForAppend(boolean writeHeader) throws IOException {
+        outFile = new FileOutputStream(checkpointFile, !writeHeader); // a new session replaces any old checkpoint
+        out = new DataOutputStream(new BufferedOutputStream(outFile));
+        if (writeHeader) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(directory);
+            out.writeUTF(resultsFileName);
+            out.writeUTF(resultsFormat);
+            writeCommitRecord(new File(resultsFileName).length()); // whatever the results file held already
+            out.flush();
+        }
+    }
+
+    private void writeCommitRecord(long resultsLength) throws IOException {
+        out.writeByte(COMMIT_RECORD);
+        out.writeLong(resultsLength);
+        committedResultsLength = resultsLength;
+    }
+
+    /**
+     * Cut the results file back to its length at the last commit, dropping
+     * results logged after it (including any line or block cut short).
+     */
+    private void dropUncommittedResults() throws IOException {
+        File resultsFile = new File(resultsFileName);
+        long length = resultsFile.length();
+        if (length > committedResultsLength) {
+            System.out.println("Dropping " + (length - committedResultsLength) +
+                    " bytes of results logged after the last checkpoint from " + resultsFileName);
+            try (RandomAccessFile raf = new RandomAccessFile(resultsFile, "rw")) {
+                raf.setLength(committedResultsLength);
+            }
+        } else if (length < committedResultsLength) {
+            System.out.println("Session Checkpoint ERROR: " + resultsFileName +
+                    " is shorter than at the last checkpoint; some results are missing");
+        }
+    }
+
+    private static void writeFileRecord(DataOutputStream out, FileMetadata metadata) throws IOException {
+        out.writeByte(FILE_RECORD);
+        out.writeUTF(metadata.getRelativePath());
+        out.writeLong(metadata.getSize());
+        out.writeLong(metadata.getLastModified());
+        out.writeLong(metadata.getContentHash());
+    }
+
+    /**
+     * Read an existing checkpoint, cutting off anything after the last commit.
+     * @return Checkpoint, or null if it belongs to another directory or is unreadable
+     */
+    private static SessionCheckpoint load(File checkpointFile, String dirPath) throws IOException {
+        SessionCheckpoint checkpoint;
+        long validLength;
+        long committedLength = -1;
+        int committedManifestSize = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(checkpointFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+
+            String directory = in.readUTF();
+            String resultsFileName = in.readUTF();
+            String resultsFormat = in.readUTF();
+            if (!directory.equals(dirPath)) {
+                return null;
+            }
+
+            checkpoint = new SessionCheckpoint(checkpointFile, directory, resultsFileName, resultsFormat, true);
+            validLength = 8L + utfLength(directory) + utfLength(resultsFileName) + utfLength(resultsFormat);
+
+            List<Long> pendingPairs = new ArrayList<Long>();
+            try {
+                while (true) {
+                    byte type = in.readByte();
+                    if (type == FILE_RECORD) {
+                        String path = in.readUTF();
+                        FileMetadata metadata = new FileMetadata(path, in.readLong(), in.readLong(), in.readLong());
+                        checkpoint.manifestByPath.put(path, checkpoint.manifest.size());
+                        checkpoint.manifest.add(metadata);
+                        validLength += 1 + utfLength(path) + 24;
+
+                    } else if (type == PAIR_RECORD) {
+                        pendingPairs.add(pairKey(in.readInt(), in.readInt()));
+                        validLength += 9;
+
+                    } else if (type == COMMIT_RECORD) {
+                        checkpoint.committedResultsLength = in.readLong();
+                        checkpoint.completedPairs.addAll(pendingPairs);
+                        pendingPairs.clear();
+                        validLength += 9;
+                        committedLength = validLength;
+                        committedManifestSize = checkpoint.manifest.size();
+
+                    } else {
+                        break; // garbage: keep what came before it
+                    }
+                }
+            } catch (EOFException e) { /*End of Checkpoint*/ }
+
+        } catch (EOFException e) {
+            return null; // header incomplete
+        }
+
+        if (committedLength < 0) {
+            return null; // cut short before its first commit
+        }
+
+        // Files registered after the last commit are cut off with it; they are numbered again when seen
+        if (checkpoint.manifest.size() > committedManifestSize) {
+            checkpoint.manifest.subList(committedManifestSize, checkpoint.manifest.size()).clear();
+            checkpoint.manifestByPath.clear();
+            for (int ii=0; ii<checkpoint.manifest.size(); ii++) {
+                checkpoint.manifestByPath.put(checkpoint.manifest.get(ii).getRelativePath(), ii);
+            }
+        }
+
+        // Drop anything after the last commit so new records append cleanly
+        try (RandomAccessFile raf = new RandomAccessFile(checkpointFile, "rw")) {
+            if (raf.length() > committedLength) {
+                raf.setLength(committedLength);
+            }
+        }
+
+        return checkpoint;
+    }
+
+    /**
+     * Bytes DataOutput.writeUTF uses for a string, including its length prefix.
+     */
+    private static int utfLength(String s) {
+        int length = 2;
+        for (int ii=0; ii<s.length(); ii++) {
+            char c = s.charAt(ii);
+            if (c >= 0x0001 && c <= 0x007F) {
+                length += 1;
+            } else if (c <= 0x07FF) {
+                length += 2;
+            } else {
+                length += 3;
+            }
+        }
+
+        return length;
+    }
+}
@@ -0,0 +1,171 @@
+package sec.multithreadedfilecomparison.controller;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded blocking queue whose capacity can adjust itself between a floor
+ * and a ceiling, from how its producers and consumers have been waiting
+ * (see CapacityTuner).
+ * With the ceiling equal to the floor it is an ordinary bounded queue.
+ * Only the blocking hand-off between the File Scanner and the Comparator is
+ * offered, not the whole BlockingQueue interface.
+ * @param <E> Element Type
+ */
+public class TunableBlockingQueue<E> {
+
+    private final CapacityTuner tuner;
+    private final ArrayDeque<E> items;
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final Condition notFull;
+
+    public TunableBlockingQueue(int capacity) {
+        this(capacity, capacity);
+    }
+
+    public TunableBlockingQueue(int capacity, int maxCapacity) {
+        this.tuner = new CapacityTuner(capacity, maxCapacity);
+        this.items = new ArrayDeque<E>();
+        this.lock = new ReentrantLock();
+        this.notEmpty = lock.newCondition();
+        this.notFull = lock.newCondition();
+    }
+
+    public boolean isAutoTuned() {
+        return tuner.isAutoTuned();
+    }
+
+    public int getCapacity() {
+        lock.lock();
+        try {
+            return tuner.getCapacity();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxCapacity() {
+        return tuner.getMaxCapacity();
+    }
+
+    public int getNumRetunes() {
+        lock.lock();
+        try {
+            return tuner.getNumRetunes();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add an element, waiting while the queue is at its current capacity.
+     * @param e Element
+     * @throws InterruptedException Interrupted while waiting
+     */
+    public void put(E e) throws InterruptedException {
+        checkNotNull(e);
+        lock.lockInterruptibly();
+        try {
+            if (items.size() >= tuner.getCapacity()) {
+                long start = System.nanoTime();
+                while (items.size() >= tuner.getCapacity()) {
+                    notFull.await();
+                }
+                tuner.producerWaited(System.nanoTime() - start);
+            }
+            enqueue(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove the oldest element, waiting until there is one.
+     * @return Element
+     * @throws InterruptedException Interrupted while waiting
+     */
+    public E take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            if (items.isEmpty()) {
+                long start = System.nanoTime();
+                while (items.isEmpty()) {
+                    notEmpty.await();
+                }
+                tuner.consumerWaited(System.nanoTime() - start);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove the oldest element, waiting up to the timeout for one.
+     * @param timeout Longest Wait
+     * @param unit Unit of the Timeout
+     * @return Element, or null if none arrived in time
+     * @throws InterruptedException Interrupted while waiting
+     */
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            if (items.isEmpty()) {
+                long start = System.nanoTime();
+                while (items.isEmpty() && nanos > 0) {
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+                tuner.consumerWaited(System.nanoTime() - start);
+                if (items.isEmpty()) {
+                    retuneIfDue();
+                    return null;
+                }
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return items.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(E e) {
+        items.addLast(e);
+        tuner.added(items.size());
+        notEmpty.signal();
+        retuneIfDue();
+    }
+
+    private E dequeue() {
+        E e = items.pollFirst();
+        notFull.signal();
+        retuneIfDue();
+        return e;
+    }
+
+    /**
+     * Adjust the capacity from the last window's waiting. Lock must be held.
+     */
+    private void retuneIfDue() {
+        if (tuner.retuneIfDue(items.size())) {
+            notFull.signalAll();
+        }
+    }
+
+    private static void checkNotNull(Object e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+    }
+}
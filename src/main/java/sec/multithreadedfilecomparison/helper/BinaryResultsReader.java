@@ -0,0 +1,248 @@
+package sec.multithreadedfilecomparison.helper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Streams records out of a binary results file, one block at a time.
+ * Use it as a cursor: call next() until it returns false, reading the current
+ * record through the getters in between.
+ *
+ * File layout: [int MAGIC][int VERSION] then blocks of
+ * [int raw length][int compressed length][deflated bytes]; each raw block is
+ * [int #new names][UTF names...][int #records][(int id1, int id2, float sim)...].
+ * Names get ids in order of first appearance across the whole file.
+ * A last block cut short (e.g. by a crash while it was written) is treated
+ * as the end of the file, as if it had never been written.
+ */
+public class BinaryResultsReader implements AutoCloseable {
+
+    public static final int MAGIC = 0x4D464352; // "MFCR"
+    public static final int VERSION = 1;
+    public static final int RECORD_SIZE = 12;
+    public static final int HEADER_SIZE = 8;
+    public static final int BLOCK_HEADER_SIZE = 8;
+    private static final int MIN_RAW_LENGTH = 8; // the two counts
+    private final DataInputStream in;
+    private final List<String> names;
+    private final Inflater inflater;
+    private long completeLength;
+    private boolean ended;
+    private DataInputStream block;
+    private int recordsLeftInBlock;
+    private int file1Id;
+    private int file2Id;
+    private float similarity;
+
+    public BinaryResultsReader(String inputFileName) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(inputFileName)));
+        this.names = new ArrayList<String>();
+        this.inflater = new Inflater();
+        this.completeLength = HEADER_SIZE;
+        this.ended = false;
+        this.block = null;
+        this.recordsLeftInBlock = 0;
+
+        if (in.readInt() != MAGIC) {
+            in.close();
+            throw new IOException(inputFileName + " is not a binary results file");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            in.close();
+            throw new IOException("Unsupported binary results version " + version);
+        }
+    }
+
+    /**
+     * Move to the next record.
+     * @return false once there are no more records
+     * @throws IOException Reading Error
+     */
+    public boolean next() throws IOException {
+        while (recordsLeftInBlock == 0) {
+            if (!readBlock()) {
+                return false;
+            }
+        }
+
+        file1Id = block.readInt();
+        file2Id = block.readInt();
+        similarity = block.readFloat();
+        recordsLeftInBlock--;
+        return true;
+    }
+
+    public int getFile1Id() {
+        return file1Id;
+    }
+
+    public int getFile2Id() {
+        return file2Id;
+    }
+
+    public String getFile1Name() {
+        return names.get(file1Id);
+    }
+
+    public String getFile2Name() {
+        return names.get(file2Id);
+    }
+
+    public float getSimilarity() {
+        return similarity;
+    }
+
+    /**
+     * File names seen so far, indexed by id.
+     * @return Names
+     */
+    public List<String> getNames() {
+        return names;
+    }
+
+    /**
+     * Bytes from the start of the file to the end of the last complete
+     * block read so far; anything after that once all blocks are read is a
+     * block cut short.
+     * @return Length in bytes
+     */
+    public long getCompleteLength() {
+        return completeLength;
+    }
+
+    /**
+     * Read the names in all remaining blocks, skipping their records.
+     * @throws IOException Reading Error
+     */
+    public void readRemainingBlocks() throws IOException {
+        while (readBlock()) {
+            // names are collected as blocks are read
+        }
+        recordsLeftInBlock = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    /**
+     * Read the next block's names and position at its first record.
+     * @return false at end of file, or at a block cut short
+     */
+    private boolean readBlock() throws IOException {
+        if (ended) {
+            return false;
+        }
+
+        int rawLength;
+        int compressedLength;
+        byte[] compressed;
+        try {
+            rawLength = in.readInt();
+            compressedLength = in.readInt();
+            if (rawLength < MIN_RAW_LENGTH || compressedLength < 0) {
+                ended = true; // not a block header: what was left of one, zero-filled
+                return false;
+            }
+            compressed = new byte[compressedLength];
+            in.readFully(compressed);
+        } catch (EOFException e) {
+            ended = true; // end of file, or a block cut short
+            return false;
+        }
+
+        byte[] raw = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            int inflated = 0;
+            while (inflated < rawLength) {
+                int count = inflater.inflate(raw, inflated, rawLength - inflated);
+                if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Corrupt results block: " + inflated + " of " + rawLength + " bytes");
+                }
+                inflated += count;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt results block: " + e.getMessage());
+        }
+
+        block = new DataInputStream(new ByteArrayInputStream(raw));
+        int numNewNames = block.readInt();
+        for (int ii=0; ii<numNewNames; ii++) {
+            names.add(block.readUTF());
+        }
+        recordsLeftInBlock = block.readInt();
+        completeLength += BLOCK_HEADER_SIZE + compressedLength;
+        return true;
+    }
+
+    /**
+     * Read all file names in a results file, indexed by id.
+     * @param inputFileName Results File
+     * @return Names
+     * @throws IOException Reading Error
+     */
+    public static List<String> readDictionary(String inputFileName) throws IOException {
+        try (BinaryResultsReader reader = new BinaryResultsReader(inputFileName)) {
+            reader.readRemainingBlocks();
+            return reader.getNames();
+        }
+    }
+
+    /**
+     * Convert a binary results file to the CSV format.
+     * @param inputFileName Binary Results File
+     * @param outputFileName CSV File
+     * @return Number of records converted
+     * @throws IOException Reading/Writing Error
+     */
+    public static long toCsv(String inputFileName, String outputFileName) throws IOException {
+        long records = 0;
+        try (BinaryResultsReader reader = new BinaryResultsReader(inputFileName);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(
+                     new FileOutputStream(outputFileName), StandardCharsets.UTF_8))) {
+
+            while (reader.next()) {
+                writer.write(
+                        reader.getFile1Name() + "," +
+                        reader.getFile2Name() + "," +
+                        reader.getSimilarity() + "\n"
+                );
+                records++;
+            }
+        }
+
+        return records;
+    }
+
+    /**
+     * Command-line converter: BinaryResultsReader in.bin out.csv
+     * @param args Input and output file names
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: BinaryResultsReader <results.bin> <results.csv>");
+            return;
+        }
+
+        long records = toCsv(args[0], args[1]);
+        System.out.println("Converted " + records + " records to " + args[1]);
+    }
+}
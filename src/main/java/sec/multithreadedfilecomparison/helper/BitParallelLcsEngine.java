@@ -0,0 +1,200 @@
+package sec.multithreadedfilecomparison.helper;
+
+import sec.multithreadedfilecomparison.model.PreparedContent;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bit-parallel LCS length (Allison-Dix / Hyyro).
+ * One bit of a row vector V is kept per character of the shorter file, so
+ * each character of the longer file updates 64 DP columns per long word:
+ *   U = V & M[c];  V = (V + U) | (V - U)
+ * where M[c] is the match mask of character c. Zero bits in the final V
+ * count the LCS length. Scores are identical to the DP engines.
+ */
+public class BitParallelLcsEngine implements SimilarityEngine {
+
+    public static final String MASKS_INDEX = "bit-parallel-masks";
+    static final int TYPICAL_ALPHABET = 96;
+
+    /**
+     * Masks are kept on the shorter file's prepared contents, so a file
+     * paired with many longer ones only builds them once.
+     */
+    @Override
+    public double calcSimilarity(PreparedContent file1, PreparedContent file2) {
+        if (file1.length() == 0 && file2.length() == 0) return 1.0;
+        if (file1.length() == 0 || file2.length() == 0) return 0.0;
+
+        PreparedContent shorter = file1;
+        PreparedContent longer = file2;
+        if (shorter.length() > longer.length()) {
+            shorter = file2;
+            longer = file1;
+        }
+
+        MatchMasks masks = shorter.getIndex(MASKS_INDEX, MatchMasks::new);
+        int matches = lcsLength(masks, longer.getContent());
+        return Helpers.similarityScore(matches, file1.length(), file2.length());
+    }
+
+    /**
+     * Masks for the shorter file (assuming around a printable ASCII
+     * alphabet's worth of distinct characters) plus the working row.
+     */
+    @Override
+    public long estimateWorkingMemory(int length1, int length2) {
+        long numWords = Math.min(length1, length2) / 64 + 1;
+        return 8L * numWords * (TYPICAL_ALPHABET + 1);
+    }
+
+    /**
+     * Length of the longest common sub-sequence of two char sequences.
+     * Masks are built for the shorter one.
+     * @param file1 File 1 Contents
+     * @param file2 File 2 Contents
+     * @return LCS Length
+     */
+    public static int lcsLength(char[] file1, char[] file2) {
+        if (file1.length <= file2.length) {
+            return lcsLength(new MatchMasks(file1), file2);
+        }
+        return lcsLength(new MatchMasks(file2), file1);
+    }
+
+    /**
+     * Length of the longest common sub-sequence between the masked sequence
+     * and another sequence.
+     * @param masks Match masks of the first sequence
+     * @param other Second sequence
+     * @return LCS Length
+     */
+    public static int lcsLength(MatchMasks masks, char[] other) {
+        int nWords = masks.numWords;
+        long[] v = new long[nWords];
+        Arrays.fill(v, -1L);
+
+        for (char c : other) {
+            long[] m = masks.get(c);
+            if (m == null) {
+                continue; // no match anywhere: V is unchanged
+            }
+            update(v, m, 0, nWords, 0);
+        }
+
+        return countZeros(v, masks.length);
+    }
+
+    /**
+     * Apply one character's update to words [from, to) of V.
+     * @param v Row vector
+     * @param m Match mask of the character
+     * @param from First word
+     * @param to End word (exclusive)
+     * @param carry Carry into word 'from' (0 or 1)
+     * @return Carry out of the last word
+     */
+    static long update(long[] v, long[] m, int from, int to, long carry) {
+        for (int kk=from; kk<to; kk++) {
+            long vk = v[kk];
+            long u = vk & m[kk];
+            long sum = vk + u;
+            long carryOut = Long.compareUnsigned(sum, vk) < 0 ? 1 : 0;
+            sum += carry;
+            if (carry == 1 && sum == 0) {
+                carryOut = 1;
+            }
+            carry = carryOut;
+            v[kk] = sum | (vk - u);
+        }
+
+        return carry;
+    }
+
+    /**
+     * Count zero bits of V within the used length: the LCS length.
+     * @param v Row vector
+     * @param length Masked sequence length
+     * @return LCS Length
+     */
+    static int countZeros(long[] v, int length) {
+        int zeros = 0;
+        for (int kk=0; kk<v.length; kk++) {
+            long vk = v[kk];
+            int usedBits = Math.min(64, length - kk * 64);
+            if (usedBits < 64) {
+                vk |= -1L << usedBits;
+            }
+            zeros += Long.bitCount(~vk);
+        }
+
+        return zeros;
+    }
+
+    /**
+     * Per-character match masks of a sequence: bit i of M[c] is set when the
+     * sequence has c at position i. ASCII/Latin-1 characters use a direct
+     * table; anything else falls back to a map.
+     */
+    public static class MatchMasks implements PreparedContent.Index {
+        private static final int TABLE_SIZE = 256;
+        private final int length;
+        private final int numWords;
+        private final long[][] table;
+        private final Map<Character, long[]> others;
+
+        public MatchMasks(char[] sequence) {
+            this.length = sequence.length;
+            this.numWords = (sequence.length + 63) / 64;
+            this.table = new long[TABLE_SIZE][];
+            this.others = new HashMap<Character, long[]>();
+
+            for (int ii=0; ii<sequence.length; ii++) {
+                char c = sequence[ii];
+                long[] mask;
+                if (c < TABLE_SIZE) {
+                    mask = table[c];
+                    if (mask == null) {
+                        mask = new long[numWords];
+                        table[c] = mask;
+                    }
+                } else {
+                    mask = others.computeIfAbsent(c, k -> new long[numWords]);
+                }
+                mask[ii >>> 6] |= 1L << ii;
+            }
+        }
+
+        public long[] get(char c) {
+            if (c < TABLE_SIZE) {
+                return table[c];
+            }
+            return others.get(c);
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public int getNumWords() {
+            return numWords;
+        }
+
+        /**
+         * Rough heap footprint of the masks, in bytes.
+         * @return Size in bytes
+         */
+        @Override
+        public long estimateSize() {
+            long distinct = others.size();
+            for (long[] mask : table) {
+                if (mask != null) {
+                    distinct++;
+                }
+            }
+            return TABLE_SIZE * 8L + distinct * (16L + numWords * 8L);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package sec.multithreadedfilecomparison.helper;
+
+/**
+ * What a session's LCS runs over. CHARACTER is the original char-by-char
+ * comparison. LINE and TOKEN first turn each file into a sequence of ids
+ * (see TokenLcsEngine), which is far shorter and ignores layout:
+ *   LINE  - one id per non-blank line, with surrounding whitespace trimmed;
+ *   TOKEN - one id per identifier, number, or punctuation character, with
+ *           all whitespace dropped.
+ * Scores from different modes are not comparable, so each has its own kind
+ * in the score cache.
+ */
+public enum ComparisonMode {
+    CHARACTER("char-lcs"),
+    LINE("line-lcs"),
+    TOKEN("token-lcs");
+
+    private final String scoreKind;
+
+    ComparisonMode(String scoreKind) {
+        this.scoreKind = scoreKind;
+    }
+
+    /**
+     * Name this mode's scores are kept under in a PairScoreCache.
+     * @return Score Kind
+     */
+    public String getScoreKind() {
+        return scoreKind;
+    }
+}
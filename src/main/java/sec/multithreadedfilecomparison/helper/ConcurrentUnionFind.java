@@ -0,0 +1,97 @@
+package sec.multithreadedfilecomparison.helper;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free disjoint sets over non-negative int ids (e.g. file ids), which
+ * any number of threads may union and look up at once.
+ * Parents live in fixed-size chunks of AtomicIntegerArray, allocated as ids
+ * first appear, so the number of ids need not be known up front. A root is
+ * only ever linked under a smaller id, with a compare-and-set that fails if
+ * it has stopped being a root, so no cycles can form. Lookups halve their
+ * paths as they go.
+ */
+public class ConcurrentUnionFind {
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int MAX_CHUNKS = 1 << (31 - CHUNK_BITS);
+    private final AtomicReferenceArray<AtomicIntegerArray> chunks;
+
+    public ConcurrentUnionFind() {
+        this.chunks = new AtomicReferenceArray<AtomicIntegerArray>(MAX_CHUNKS);
+    }
+
+    /**
+     * Merge the sets holding two ids.
+     * @param id1 Id 1
+     * @param id2 Id 2
+     * @return Whether they were in different sets (i.e. whether this merged anything)
+     */
+    public boolean union(int id1, int id2) {
+        while (true) {
+            int root1 = find(id1);
+            int root2 = find(id2);
+            if (root1 == root2) {
+                return false;
+            }
+
+            int child = Math.max(root1, root2);
+            int parent = Math.min(root1, root2);
+            if (chunkFor(child).compareAndSet(child & (CHUNK_SIZE - 1), child, parent)) {
+                return true;
+            }
+            // child was linked elsewhere meanwhile: look again
+        }
+    }
+
+    /**
+     * The id standing for an id's set: its smallest member, once every
+     * union so far has finished.
+     * @param id Id
+     * @return Root Id
+     */
+    public int find(int id) {
+        int current = id;
+        while (true) {
+            AtomicIntegerArray chunk = chunkFor(current);
+            int slot = current & (CHUNK_SIZE - 1);
+            int parent = chunk.get(slot);
+            if (parent == current) {
+                return current;
+            }
+
+            int grandparent = chunkFor(parent).get(parent & (CHUNK_SIZE - 1));
+            if (grandparent != parent) {
+                chunk.compareAndSet(slot, parent, grandparent); // halve the path; fine if it fails
+            }
+            current = grandparent;
+        }
+    }
+
+    /**
+     * The chunk holding an id's parent, made (with each id its own parent) if new.
+     */
+    private AtomicIntegerArray chunkFor(int id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Ids must not be negative: " + id);
+        }
+
+        int index = id >>> CHUNK_BITS;
+        AtomicIntegerArray chunk = chunks.get(index);
+        if (chunk == null) {
+            AtomicIntegerArray fresh = new AtomicIntegerArray(CHUNK_SIZE);
+            int base = index << CHUNK_BITS;
+            for (int ii=0; ii<CHUNK_SIZE; ii++) {
+                fresh.set(ii, base + ii);
+            }
+            if (chunks.compareAndSet(index, null, fresh)) {
+                chunk = fresh;
+            } else {
+                chunk = chunks.get(index);
+            }
+        }
+        return chunk;
+    }
+}
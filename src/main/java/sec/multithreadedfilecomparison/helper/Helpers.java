@@ -1,5 +1,8 @@
 package sec.multithreadedfilecomparison.helper;
 
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 
 public class Helpers {
@@ -69,7 +72,36 @@ public class Helpers {
         }
 
         // Export final result
-        double result = (double)(matches * 2) / (file1.length + file2.length);
+        double result = similarityScore(matches, file1.length, file2.length);
         return result;
     }
+
+    /**
+     * Turn an LCS length into a similarity score.
+     * @param matches LCS Length
+     * @param length1 File 1 Length
+     * @param length2 File 2 Length
+     * @return Similarity Score Percentage
+     */
+    public static double similarityScore(int matches, int length1, int length2) {
+        return (double)(matches * 2) / (length1 + length2);
+    }
+
+    /**
+     * 64-bit hash of some raw file bytes (the first 8 bytes of their SHA-256).
+     * The buffer's position is left unchanged.
+     * @param bytes File Bytes
+     * @return Content Hash
+     */
+    public static long contentHash(ByteBuffer bytes) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+
+        digest.update(bytes.duplicate());
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
 }
@@ -0,0 +1,64 @@
+package sec.multithreadedfilecomparison.helper;
+
+import sec.multithreadedfilecomparison.model.PreparedContent;
+
+/**
+ * Computes the LCS length using two rolling rows of the DP table instead of
+ * the whole table. Only the match count is needed for the similarity score,
+ * so the alignment (and the direction table) can be dropped entirely.
+ * Memory use is O(min(n,m)).
+ */
+public class LinearSpaceLcsEngine implements SimilarityEngine {
+
+    @Override
+    public double calcSimilarity(PreparedContent file1, PreparedContent file2) {
+        if (file1.length() == 0 && file2.length() == 0) return 1.0;
+        if (file1.length() == 0 || file2.length() == 0) return 0.0;
+
+        int matches = lcsLength(file1.getContent(), file2.getContent());
+        return Helpers.similarityScore(matches, file1.length(), file2.length());
+    }
+
+    /**
+     * Length of the longest common sub-sequence of two char sequences.
+     * @param file1 File 1 Contents
+     * @param file2 File 2 Contents
+     * @return LCS Length
+     */
+    public static int lcsLength(char[] file1, char[] file2) {
+
+        // Rows run along the shorter sequence to keep them small
+        char[] outer = file1;
+        char[] inner = file2;
+        if (inner.length > outer.length) {
+            outer = file2;
+            inner = file1;
+        }
+
+        int[] prevRow = new int[inner.length+1];
+        int[] currRow = new int[inner.length+1];
+
+        for (int ii=1; ii<=outer.length; ii++) {
+            char c = outer[ii-1];
+            for (int jj=1; jj<=inner.length; jj++) {
+
+                if (c == inner[jj-1]) {
+                    currRow[jj] = prevRow[jj-1] + 1;
+
+                } else if (prevRow[jj] > currRow[jj-1]) {
+                    currRow[jj] = prevRow[jj];
+
+                } else {
+                    currRow[jj] = currRow[jj-1];
+                }
+            }
+
+            // Swap rows; currRow[0] stays zero
+            int[] tmp = prevRow;
+            prevRow = currRow;
+            currRow = tmp;
+        }
+
+        return prevRow[inner.length];
+    }
+}
@@ -0,0 +1,90 @@
+package sec.multithreadedfilecomparison.helper;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Builds MinHash signatures over the character shingles (k-grams) of a file.
+ * The fraction of equal positions in two signatures estimates the Jaccard
+ * similarity of the two files' shingle sets.
+ */
+public class MinHasher {
+
+    private static final long SEED = 0x5DEECE66DL;
+    private final int numHashes;
+    private final int shingleSize;
+    private final long[] multipliers;
+    private final long[] offsets;
+
+    public MinHasher(int numHashes, int shingleSize) {
+        if (numHashes <= 0 || shingleSize <= 0) {
+            throw new IllegalArgumentException("numHashes and shingleSize must be positive");
+        }
+
+        this.numHashes = numHashes;
+        this.shingleSize = shingleSize;
+        this.multipliers = new long[numHashes];
+        this.offsets = new long[numHashes];
+
+        // Fixed seed so signatures are comparable between runs
+        Random random = new Random(SEED);
+        for (int ii=0; ii<numHashes; ii++) {
+            multipliers[ii] = random.nextLong() | 1L;
+            offsets[ii] = random.nextLong();
+        }
+    }
+
+    public int getNumHashes() {
+        return numHashes;
+    }
+
+    /**
+     * Compute the signature of some contents.
+     * @param content File Contents
+     * @return Signature of numHashes values
+     */
+    public int[] signature(CharSequence content) {
+        int[] sig = new int[numHashes];
+        Arrays.fill(sig, Integer.MAX_VALUE);
+
+        int nShingles = Math.max(1, content.length() - shingleSize + 1);
+        for (int start=0; start<nShingles; start++) {
+            long shingle = shingleHash(content, start, Math.min(content.length(), start + shingleSize));
+            for (int ii=0; ii<numHashes; ii++) {
+                int h = (int)((shingle * multipliers[ii] + offsets[ii]) >>> 33);
+                if (h < sig[ii]) {
+                    sig[ii] = h;
+                }
+            }
+        }
+
+        return sig;
+    }
+
+    /**
+     * Estimate the Jaccard similarity of two signatures.
+     * @param sig1 Signature 1
+     * @param sig2 Signature 2
+     * @return Estimated Similarity
+     */
+    public static double estimateSimilarity(int[] sig1, int[] sig2) {
+        int equal = 0;
+        for (int ii=0; ii<sig1.length; ii++) {
+            if (sig1[ii] == sig2[ii]) {
+                equal++;
+            }
+        }
+
+        return (double)equal / sig1.length;
+    }
+
+    private static long shingleHash(CharSequence content, int from, int to) {
+        long h = 0xcbf29ce484222325L; // FNV-1a
+        for (int ii=from; ii<to; ii++) {
+            h ^= content.charAt(ii);
+            h *= 0x100000001b3L;
+        }
+
+        return h ^ (h >>> 29);
+    }
+}
@@ -0,0 +1,52 @@
+package sec.multithreadedfilecomparison.helper;
+
+import sec.multithreadedfilecomparison.model.PreparedContent;
+
+/**
+ * A strategy for scoring how similar the contents of two files are.
+ * Every engine must agree with Helpers.calcSimilarity: the score is
+ * (2 * LCS length) / (length1 + length2), with two empty files scoring 1.0.
+ */
+public interface SimilarityEngine {
+
+    /**
+     * Compute the similarity of two prepared file contents. Engines may
+     * attach per-file indexes to the prepared contents for reuse.
+     * @param file1 File 1 Prepared Contents
+     * @param file2 File 2 Prepared Contents
+     * @return Similarity Score Percentage
+     */
+    double calcSimilarity(PreparedContent file1, PreparedContent file2);
+
+    /**
+     * Compute the similarity of two file contents.
+     * @param file1Str File 1 Contents
+     * @param file2Str File 2 Contents
+     * @return Similarity Score Percentage
+     */
+    default double calcSimilarity(String file1Str, String file2Str) {
+        return calcSimilarity(new PreparedContent(file1Str), new PreparedContent(file2Str));
+    }
+
+    /**
+     * Roughly how many bytes comparing contents of these lengths needs while
+     * it runs, not counting the contents themselves. The default suits
+     * engines that keep a couple of DP rows along the shorter file.
+     * @param length1 File 1 Length
+     * @param length2 File 2 Length
+     * @return Working Memory in bytes
+     */
+    default long estimateWorkingMemory(int length1, int length2) {
+        return 8L * (Math.min(length1, length2) + 1);
+    }
+
+    /**
+     * Whether the LCS is over the characters of the contents, so that
+     * character-level bounds and kernels (thresholding, the wavefront split)
+     * apply to it.
+     * @return Character Level
+     */
+    default boolean isCharacterLevel() {
+        return true;
+    }
+}
@@ -0,0 +1,26 @@
+package sec.multithreadedfilecomparison.helper;
+
+import sec.multithreadedfilecomparison.model.PreparedContent;
+
+/**
+ * The original full-table LCS, kept for reference and for cross-checking
+ * the other engines. Needs O(n*m) memory, so avoid it for large files.
+ */
+public class TableLcsEngine implements SimilarityEngine {
+
+    @Override
+    public double calcSimilarity(PreparedContent file1, PreparedContent file2) {
+        return Helpers.calcSimilarity(new String(file1.getContent()), new String(file2.getContent()));
+    }
+
+    @Override
+    public double calcSimilarity(String file1Str, String file2Str) {
+        return Helpers.calcSimilarity(file1Str, file2Str);
+    }
+
+    @Override
+    public long estimateWorkingMemory(int length1, int length2) {
+        // int and boolean per cell, plus copies of both contents
+        return 5L * (length1 + 1) * (length2 + 1) + 4L * (length1 + length2);
+    }
+}
@@ -0,0 +1,229 @@
+package sec.multithreadedfilecomparison.helper;
+
+import sec.multithreadedfilecomparison.model.PreparedContent;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Only works out the similarity of pairs that reach a threshold; anything
+ * below it is reported as BELOW_THRESHOLD. The score needs
+ * LCS >= threshold * (n + m) / 2, so a pair is tried against, in order:
+ *  1. the length bound, LCS <= min(n, m);
+ *  2. the character histogram bound, LCS <= sum over c of min(count1[c], count2[c]);
+ *  3. a DP limited to the diagonal band that any alignment with enough
+ *     matches must stay inside. This gives the exact LCS when the pair is
+ *     above the threshold, and something smaller otherwise.
+ * The band is only used when it is much narrower than the shorter file;
+ * otherwise the exact engine runs and its score is checked. Engines that
+ * do not work on characters (line/token modes) are always run exactly and
+ * checked, since the bounds above are in characters.
+ */
+public class ThresholdedLcsEngine implements SimilarityEngine {
+
+    public static final double BELOW_THRESHOLD = -2.0;
+    public static final String HISTOGRAM_INDEX = "char-histogram";
+    private static final int BAND_CUTOFF_FACTOR = 20;
+    private final double threshold;
+    private final SimilarityEngine exactEngine;
+    private final AtomicLong rejectedByLength;
+    private final AtomicLong rejectedByHistogram;
+    private final AtomicLong rejectedByBand;
+    private final AtomicLong fullComparisons;
+
+    public ThresholdedLcsEngine(double threshold, SimilarityEngine exactEngine) {
+        this.threshold = threshold;
+        this.exactEngine = exactEngine;
+        this.rejectedByLength = new AtomicLong();
+        this.rejectedByHistogram = new AtomicLong();
+        this.rejectedByBand = new AtomicLong();
+        this.fullComparisons = new AtomicLong();
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    public SimilarityEngine getExactEngine() {
+        return exactEngine;
+    }
+
+    @Override
+    public double calcSimilarity(PreparedContent file1, PreparedContent file2) {
+        int n = file1.length();
+        int m = file2.length();
+        if (n == 0 || m == 0) {
+            return checked(exactEngine.calcSimilarity(file1, file2));
+        }
+        if (!exactEngine.isCharacterLevel()) {
+            fullComparisons.incrementAndGet();
+            return checked(exactEngine.calcSimilarity(file1, file2));
+        }
+
+        // One below the smallest passing LCS, to stay clear of rounding
+        int minMatches = Math.max(0, (int)Math.ceil(threshold * (n + m) / 2.0) - 1);
+
+        if (Math.min(n, m) < minMatches) {
+            rejectedByLength.incrementAndGet();
+            return BELOW_THRESHOLD;
+        }
+
+        CharHistogram hist1 = file1.getIndex(HISTOGRAM_INDEX, CharHistogram::new);
+        CharHistogram hist2 = file2.getIndex(HISTOGRAM_INDEX, CharHistogram::new);
+        if (hist1.intersection(hist2) < minMatches) {
+            rejectedByHistogram.incrementAndGet();
+            return BELOW_THRESHOLD;
+        }
+
+        long bandWidth = (long)n + m - 2L * minMatches + 1;
+        if (bandWidth * BAND_CUTOFF_FACTOR < Math.min(n, m)) {
+            int matches = bandedLcsLength(file1.getContent(), file2.getContent(), minMatches);
+            double sim = Helpers.similarityScore(matches, n, m);
+            if (sim < threshold) {
+                rejectedByBand.incrementAndGet();
+                return BELOW_THRESHOLD;
+            }
+            return sim;
+        }
+
+        fullComparisons.incrementAndGet();
+        return checked(exactEngine.calcSimilarity(file1, file2));
+    }
+
+    /**
+     * Whichever needs more: the banded DP's rows or the exact engine.
+     */
+    @Override
+    public long estimateWorkingMemory(int length1, int length2) {
+        return Math.max(8L * (Math.max(length1, length2) + 1), exactEngine.estimateWorkingMemory(length1, length2));
+    }
+
+    /**
+     * A one-line summary of where pairs were rejected.
+     * @return Summary
+     */
+    public String getRejectionSummary() {
+        return String.format(
+                "Threshold %.2f: rejected %d by length, %d by histogram, %d by band; %d full comparisons",
+                threshold, rejectedByLength.get(), rejectedByHistogram.get(),
+                rejectedByBand.get(), fullComparisons.get()
+        );
+    }
+
+    private double checked(double sim) {
+        return sim >= threshold ? sim : BELOW_THRESHOLD;
+    }
+
+    /**
+     * LCS length restricted to the diagonal band -(m-minMatches) <= i-j <= n-minMatches.
+     * Every alignment with at least minMatches matches stays inside it, so the
+     * result is exact whenever the true LCS reaches minMatches, and a lower
+     * bound otherwise. Cells outside the band keep stale values from earlier
+     * rows, which are never larger than the true ones, so that stays sound.
+     * @param file1 File 1 Contents
+     * @param file2 File 2 Contents
+     * @param minMatches Smallest LCS of interest
+     * @return LCS Length, or something below minMatches
+     */
+    public static int bandedLcsLength(char[] file1, char[] file2, int minMatches) {
+        int n = file1.length;
+        int m = file2.length;
+        if (minMatches > Math.min(n, m)) {
+            return 0; // out of reach, and 0 is always a lower bound
+        }
+
+        int below = n - minMatches; // how far i may run ahead of j
+        int above = m - minMatches; // how far j may run ahead of i
+
+        int[] prevRow = new int[m+1];
+        int[] currRow = new int[m+1];
+
+        for (int ii=1; ii<=n; ii++) {
+            char c = file1[ii-1];
+            int from = Math.max(1, ii - below);
+            int to = Math.min(m, ii + above);
+            if (from > 1) {
+                currRow[from-1] = prevRow[from-1];
+            }
+
+            for (int jj=from; jj<=to; jj++) {
+
+                if (c == file2[jj-1]) {
+                    currRow[jj] = prevRow[jj-1] + 1;
+
+                } else if (prevRow[jj] > currRow[jj-1]) {
+                    currRow[jj] = prevRow[jj];
+
+                } else {
+                    currRow[jj] = currRow[jj-1];
+                }
+            }
+
+            int[] tmp = prevRow;
+            prevRow = currRow;
+            currRow = tmp;
+        }
+
+        return prevRow[m];
+    }
+
+    /**
+     * Per-file character counts, as a sorted list of (character, count).
+     */
+    public static class CharHistogram implements PreparedContent.Index {
+        private final char[] symbols;
+        private final int[] counts;
+
+        public CharHistogram(char[] content) {
+            char[] sorted = Arrays.copyOf(content, content.length);
+            Arrays.sort(sorted);
+
+            int distinct = 0;
+            for (int ii=0; ii<sorted.length; ii++) {
+                if (ii == 0 || sorted[ii] != sorted[ii-1]) {
+                    distinct++;
+                }
+            }
+
+            this.symbols = new char[distinct];
+            this.counts = new int[distinct];
+            int kk = -1;
+            for (int ii=0; ii<sorted.length; ii++) {
+                if (ii == 0 || sorted[ii] != sorted[ii-1]) {
+                    kk++;
+                    symbols[kk] = sorted[ii];
+                }
+                counts[kk]++;
+            }
+        }
+
+        /**
+         * Sum over shared characters of the smaller count.
+         * @param other Other Histogram
+         * @return Upper bound on the LCS length
+         */
+        public int intersection(CharHistogram other) {
+            int total = 0;
+            int ii = 0;
+            int jj = 0;
+            while (ii < symbols.length && jj < other.symbols.length) {
+                if (symbols[ii] == other.symbols[jj]) {
+                    total += Math.min(counts[ii], other.counts[jj]);
+                    ii++;
+                    jj++;
+                } else if (symbols[ii] < other.symbols[jj]) {
+                    ii++;
+                } else {
+                    jj++;
+                }
+            }
+
+            return total;
+        }
+
+        @Override
+        public long estimateSize() {
+            return 32L + symbols.length * 6L;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package sec.multithreadedfilecomparison.helper;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Interns lines or tokens as small int ids, shared by every comparison
+ * thread in a session, so that equal strings in any two files get the same
+ * id and the files can be compared as int sequences.
+ * Ids are handed out densely from 0 in order of first sight.
+ */
+public class TokenDictionary {
+
+    private final ConcurrentHashMap<String, Integer> ids;
+    private final AtomicInteger nextId;
+
+    public TokenDictionary() {
+        this.ids = new ConcurrentHashMap<String, Integer>();
+        this.nextId = new AtomicInteger();
+    }
+
+    /**
+     * Get the id of a string, giving it a new one if it has not been seen.
+     * @param token Line or Token
+     * @return Id
+     */
+    public int intern(String token) {
+        Integer id = ids.get(token); // lock-free for strings already seen
+        if (id == null) {
+            id = ids.computeIfAbsent(token, k -> nextId.getAndIncrement());
+        }
+        return id;
+    }
+
+    /**
+     * Number of distinct strings seen so far.
+     * @return Dictionary Size
+     */
+    public int size() {
+        return ids.size();
+    }
+}
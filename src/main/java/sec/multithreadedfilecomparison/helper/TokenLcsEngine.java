@@ -0,0 +1,294 @@
+package sec.multithreadedfilecomparison.helper;
+
+import sec.multithreadedfilecomparison.model.PreparedContent;
+
+import java.util.Arrays;
+
+/**
+ * LCS over lines or lexical tokens instead of characters. Each file's
+ * contents are turned once into an int[] of ids from the session's shared
+ * TokenDictionary (kept as an index on its prepared contents), and the
+ * bit-parallel LCS then runs over the ids. Sequences are typically 10-50x
+ * shorter than the characters, and layout and repeated keywords no longer
+ * inflate the score. The score is (2 * LCS) / (length1 + length2) in ids.
+ * Lines can have as many distinct ids as there are lines, so when the
+ * masks would outgrow MAX_MASK_WORDS a two-row DP over the ids is used.
+ */
+public class TokenLcsEngine implements SimilarityEngine {
+
+    static final long MAX_MASK_WORDS = 1L << 20; // 8 MB of masks per file
+    private final ComparisonMode mode;
+    private final TokenDictionary dictionary;
+    private final String indexKey;
+
+    public TokenLcsEngine(ComparisonMode mode, TokenDictionary dictionary) {
+        if (mode == ComparisonMode.CHARACTER) {
+            throw new IllegalArgumentException("Character comparisons do not use token ids");
+        }
+        this.mode = mode;
+        this.dictionary = dictionary;
+        this.indexKey = mode.getScoreKind() + "-ids";
+    }
+
+    public ComparisonMode getMode() {
+        return mode;
+    }
+
+    @Override
+    public double calcSimilarity(PreparedContent file1, PreparedContent file2) {
+        TokenSequence ids1 = file1.getIndex(indexKey, content -> new TokenSequence(tokenize(content, mode, dictionary)));
+        TokenSequence ids2 = file2.getIndex(indexKey, content -> new TokenSequence(tokenize(content, mode, dictionary)));
+        int n = ids1.length();
+        int m = ids2.length();
+        if (n == 0 && m == 0) return 1.0;
+        if (n == 0 || m == 0) return 0.0;
+
+        // Masks go on the shorter sequence, and are kept for its later pairs
+        TokenSequence shorter = n <= m ? ids1 : ids2;
+        TokenSequence longer = n <= m ? ids2 : ids1;
+        IdMasks masks = shorter.getMasks();
+        int matches;
+        if (masks != null) {
+            matches = lcsLength(masks, longer.getIds());
+        } else {
+            matches = dpLcsLength(shorter.getIds(), longer.getIds());
+        }
+        return Helpers.similarityScore(matches, n, m);
+    }
+
+    @Override
+    public boolean isCharacterLevel() {
+        return false;
+    }
+
+    /**
+     * Length of the longest common sub-sequence of two id sequences.
+     * @param ids1 Sequence 1
+     * @param ids2 Sequence 2
+     * @return LCS Length
+     */
+    public static int lcsLength(int[] ids1, int[] ids2) {
+        if (ids1.length <= ids2.length) {
+            return lcsLength(new IdMasks(ids1), ids2);
+        }
+        return lcsLength(new IdMasks(ids2), ids1);
+    }
+
+    /**
+     * Same recurrence as BitParallelLcsEngine, with masks looked up by id.
+     * @param masks Match masks of the first sequence
+     * @param other Second sequence
+     * @return LCS Length
+     */
+    public static int lcsLength(IdMasks masks, int[] other) {
+        int nWords = masks.numWords;
+        long[] v = new long[nWords];
+        Arrays.fill(v, -1L);
+
+        for (int id : other) {
+            long[] m = masks.get(id);
+            if (m == null) {
+                continue; // no match anywhere: V is unchanged
+            }
+            BitParallelLcsEngine.update(v, m, 0, nWords, 0);
+        }
+
+        return BitParallelLcsEngine.countZeros(v, masks.length);
+    }
+
+    /**
+     * Plain DP over two rows along the shorter sequence.
+     * @param shorter Shorter Sequence
+     * @param longer Longer Sequence
+     * @return LCS Length
+     */
+    static int dpLcsLength(int[] shorter, int[] longer) {
+        int[] prev = new int[shorter.length + 1];
+        int[] curr = new int[shorter.length + 1];
+        for (int id : longer) {
+            for (int jj=1; jj<=shorter.length; jj++) {
+                if (shorter[jj-1] == id) {
+                    curr[jj] = prev[jj-1] + 1;
+                } else {
+                    curr[jj] = Math.max(prev[jj], curr[jj-1]);
+                }
+            }
+            int[] swap = prev;
+            prev = curr;
+            curr = swap;
+        }
+
+        return prev[shorter.length];
+    }
+
+    /**
+     * Split contents into lines or tokens and intern them.
+     *   LINE:  lines with surrounding whitespace trimmed; blank lines dropped.
+     *   TOKEN: runs of letters/digits/'_'/'$' (identifiers, keywords and
+     *          numbers), and every other non-whitespace character on its own.
+     * @param content File Contents
+     * @param mode LINE or TOKEN
+     * @param dictionary Shared Dictionary
+     * @return Ids
+     */
+    public static int[] tokenize(char[] content, ComparisonMode mode, TokenDictionary dictionary) {
+        int[] ids = new int[16];
+        int numIds = 0;
+        int ii = 0;
+        while (ii < content.length) {
+            int start;
+            int end;
+            if (mode == ComparisonMode.LINE) {
+                int lineEnd = ii;
+                while (lineEnd < content.length && content[lineEnd] != '\n') {
+                    lineEnd++;
+                }
+                start = ii;
+                end = lineEnd;
+                while (start < end && Character.isWhitespace(content[start])) {
+                    start++;
+                }
+                while (end > start && Character.isWhitespace(content[end-1])) {
+                    end--;
+                }
+                ii = lineEnd + 1;
+
+            } else {
+                char c = content[ii];
+                if (Character.isWhitespace(c)) {
+                    ii++;
+                    continue;
+                }
+                start = ii;
+                ii++;
+                if (isWordChar(c)) {
+                    while (ii < content.length && isWordChar(content[ii])) {
+                        ii++;
+                    }
+                }
+                end = ii;
+            }
+
+            if (start < end) {
+                if (numIds == ids.length) {
+                    ids = Arrays.copyOf(ids, ids.length * 2);
+                }
+                ids[numIds++] = dictionary.intern(new String(content, start, end - start));
+            }
+        }
+
+        return Arrays.copyOf(ids, numIds);
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    /**
+     * A file's contents as interned ids, with match masks built for it the
+     * first time it is the shorter side of a pair.
+     */
+    public static class TokenSequence implements PreparedContent.Index {
+        private final int[] ids;
+        private IdMasks masks;
+        private boolean masksBuilt;
+
+        public TokenSequence(int[] ids) {
+            this.ids = ids;
+            this.masks = null;
+            this.masksBuilt = false;
+        }
+
+        public int[] getIds() {
+            return ids;
+        }
+
+        public int length() {
+            return ids.length;
+        }
+
+        /**
+         * Match masks, built on first use.
+         * @return Masks, or null if they would be larger than MAX_MASK_WORDS
+         */
+        public synchronized IdMasks getMasks() {
+            if (!masksBuilt) {
+                masks = IdMasks.build(ids, MAX_MASK_WORDS);
+                masksBuilt = true;
+            }
+            return masks;
+        }
+
+        @Override
+        public synchronized long estimateSize() {
+            return 16L + ids.length * 4L + (masks == null ? 0 : masks.estimateSize());
+        }
+    }
+
+    /**
+     * Per-id match masks of a sequence: bit i of M[id] is set when the
+     * sequence has id at position i. The distinct ids are kept sorted, and
+     * looked up by binary search.
+     */
+    public static class IdMasks {
+        private final int length;
+        private final int numWords;
+        private final int[] distinctIds;
+        private final long[][] masks;
+
+        public IdMasks(int[] sequence) {
+            this(sequence, distinct(sequence));
+        }
+
+        private IdMasks(int[] sequence, int[] distinctIds) {
+            this.length = sequence.length;
+            this.numWords = (sequence.length + 63) / 64;
+            this.distinctIds = distinctIds;
+            this.masks = new long[distinctIds.length][numWords];
+            for (int ii=0; ii<sequence.length; ii++) {
+                int slot = Arrays.binarySearch(distinctIds, sequence[ii]);
+                masks[slot][ii >>> 6] |= 1L << ii;
+            }
+        }
+
+        /**
+         * Build masks for a sequence, unless they would take more than maxWords longs.
+         * @param sequence Ids
+         * @param maxWords Most longs to allocate
+         * @return Masks, or null if too large
+         */
+        public static IdMasks build(int[] sequence, long maxWords) {
+            int[] distinctIds = distinct(sequence);
+            long numWords = (sequence.length + 63) / 64;
+            if (distinctIds.length * numWords > maxWords) {
+                return null;
+            }
+            return new IdMasks(sequence, distinctIds);
+        }
+
+        private static int[] distinct(int[] sequence) {
+            int[] sorted = sequence.clone();
+            Arrays.sort(sorted);
+            int numDistinct = 0;
+            for (int ii=0; ii<sorted.length; ii++) {
+                if (ii == 0 || sorted[ii] != sorted[ii-1]) {
+                    sorted[numDistinct++] = sorted[ii];
+                }
+            }
+            return Arrays.copyOf(sorted, numDistinct);
+        }
+
+        public long[] get(int id) {
+            int slot = Arrays.binarySearch(distinctIds, id);
+            return slot < 0 ? null : masks[slot];
+        }
+
+        /**
+         * Rough heap footprint of the masks, in bytes.
+         * @return Size in bytes
+         */
+        public long estimateSize() {
+            return distinctIds.length * (20L + numWords * 8L);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package sec.multithreadedfilecomparison.helper;
+
+import sec.multithreadedfilecomparison.helper.BitParallelLcsEngine.MatchMasks;
+import sec.multithreadedfilecomparison.model.PreparedContent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bit-parallel LCS spread over several cores, for very large pairs.
+ * The shorter file's row vector V is cut into blocks of WORDS_PER_TILE words,
+ * and the longer file into chunks of CHARS_PER_TILE characters. Tile (b, c)
+ * runs the bit-parallel update of block b over chunk c. It needs block b's
+ * V after chunk c-1, from tile (b, c-1), and the carry out of block b-1 for
+ * each character of chunk c, from tile (b-1, c). So every tile on an
+ * anti-diagonal b + c = d can run at once, and the diagonals run in order
+ * on a ForkJoinPool.
+ * Only V and one column of carry bits per block are kept (two, alternating
+ * between diagonals), never the DP grid. Scores are identical to the other
+ * engines.
+ * Pairs smaller than minCells (length1 * length2) are not worth splitting
+ * and go to the single-threaded engine instead.
+ */
+public class WavefrontLcsEngine implements SimilarityEngine {
+
+    public static final int WORDS_PER_TILE = 64;
+    public static final int CHARS_PER_TILE = 4096;
+    private final SimilarityEngine smallPairEngine;
+    private final long minCells;
+    private final ForkJoinPool pool;
+    private final AtomicLong parallelPairs;
+
+    public WavefrontLcsEngine(SimilarityEngine smallPairEngine, long minCells, ForkJoinPool pool) {
+        this.smallPairEngine = smallPairEngine;
+        this.minCells = minCells;
+        this.pool = pool;
+        this.parallelPairs = new AtomicLong();
+    }
+
+    public long getMinCells() {
+        return minCells;
+    }
+
+    /**
+     * Number of pairs compared with the parallel wavefront so far.
+     * @return Pairs
+     */
+    public long getParallelPairs() {
+        return parallelPairs.get();
+    }
+
+    @Override
+    public double calcSimilarity(PreparedContent file1, PreparedContent file2) {
+        if (file1.length() == 0 && file2.length() == 0) return 1.0;
+        if (file1.length() == 0 || file2.length() == 0) return 0.0;
+        if ((long)file1.length() * file2.length() < minCells) {
+            return smallPairEngine.calcSimilarity(file1, file2);
+        }
+
+        parallelPairs.incrementAndGet();
+        PreparedContent shorter = file1;
+        PreparedContent longer = file2;
+        if (shorter.length() > longer.length()) {
+            shorter = file2;
+            longer = file1;
+        }
+
+        MatchMasks masks = shorter.getIndex(BitParallelLcsEngine.MASKS_INDEX, MatchMasks::new);
+        int matches = lcsLength(masks, longer.getContent(), pool);
+        return Helpers.similarityScore(matches, file1.length(), file2.length());
+    }
+
+    @Override
+    public long estimateWorkingMemory(int length1, int length2) {
+        if ((long)length1 * length2 < minCells) {
+            return smallPairEngine.estimateWorkingMemory(length1, length2);
+        }
+
+        long numWords = Math.min(length1, length2) / 64 + 1;
+        long numBlocks = numWords / WORDS_PER_TILE + 1;
+        return 8L * numWords * (BitParallelLcsEngine.TYPICAL_ALPHABET + 1) + 2L * numBlocks * CHARS_PER_TILE / 8;
+    }
+
+    /**
+     * Length of the longest common sub-sequence between the masked sequence
+     * and another sequence, worked out tile by tile on the pool.
+     * @param masks Match masks of the first sequence
+     * @param other Second sequence
+     * @param pool Pool to run the tiles on
+     * @return LCS Length
+     * @throws CancellationException if the calling thread is interrupted
+     */
+    public static int lcsLength(MatchMasks masks, char[] other, ForkJoinPool pool) {
+        int nWords = masks.getNumWords();
+        long[] v = new long[nWords];
+        Arrays.fill(v, -1L);
+
+        int numBlocks = (nWords + WORDS_PER_TILE - 1) / WORDS_PER_TILE;
+        int numChunks = (other.length + CHARS_PER_TILE - 1) / CHARS_PER_TILE;
+        long[][][] carries = new long[2][numBlocks][CHARS_PER_TILE / 64];
+
+        for (int dd=0; dd<numBlocks+numChunks-1; dd++) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Comparison interrupted");
+            }
+
+            List<Tile> diagonal = new ArrayList<Tile>();
+            int firstBlock = Math.max(0, dd - numChunks + 1);
+            int lastBlock = Math.min(numBlocks - 1, dd);
+            for (int bb=firstBlock; bb<=lastBlock; bb++) {
+                diagonal.add(new Tile(masks, other, v, carries, bb, dd - bb));
+            }
+
+            if (diagonal.size() == 1) {
+                diagonal.get(0).compute(); // nothing to run alongside it
+            } else {
+                pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(diagonal)));
+            }
+        }
+
+        return BitParallelLcsEngine.countZeros(v, masks.getLength());
+    }
+
+    /**
+     * One block of V updated over one chunk of the other sequence.
+     */
+    private static class Tile extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final MatchMasks masks;
+        private final char[] other;
+        private final long[] v;
+        private final long[][][] carries;
+        private final int block;
+        private final int chunk;
+
+        private Tile(MatchMasks masks, char[] other, long[] v, long[][][] carries, int block, int chunk) {
+            this.masks = masks;
+            this.other = other;
+            this.v = v;
+            this.carries = carries;
+            this.block = block;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected void compute() {
+            int wordFrom = block * WORDS_PER_TILE;
+            int wordTo = Math.min(v.length, wordFrom + WORDS_PER_TILE);
+            int charFrom = chunk * CHARS_PER_TILE;
+            int charTo = Math.min(other.length, charFrom + CHARS_PER_TILE);
+
+            // Carries in were written on the previous diagonal, carries out go to this one's
+            int diagonal = block + chunk;
+            long[] carryIn = block == 0 ? null : carries[(diagonal + 1) % 2][block - 1];
+            long[] carryOut = carries[diagonal % 2][block];
+            Arrays.fill(carryOut, 0L);
+
+            for (int jj=charFrom; jj<charTo; jj++) {
+                long[] m = masks.get(other[jj]);
+                if (m == null) {
+                    continue; // no match anywhere: V unchanged, and no carry in or out
+                }
+
+                int bit = jj - charFrom;
+                long carry = carryIn == null ? 0 : (carryIn[bit >>> 6] >>> bit) & 1;
+                if (BitParallelLcsEngine.update(v, m, wordFrom, wordTo, carry) != 0) {
+                    carryOut[bit >>> 6] |= 1L << bit;
+                }
+            }
+        }
+    }
+}
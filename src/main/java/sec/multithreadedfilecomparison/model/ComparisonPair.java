@@ -9,6 +9,14 @@ public class ComparisonPair {
         this.file2 = file2;
     }
 
+    public FileItem getFile1() {
+        return file1;
+    }
+
+    public FileItem getFile2() {
+        return file2;
+    }
+
     public String getFile1Name() {
         return file1.getFileName();
     }
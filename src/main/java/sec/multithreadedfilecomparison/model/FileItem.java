@@ -1,27 +1,133 @@
 package sec.multithreadedfilecomparison.model;
 
 public class FileItem {
+    public static final int NO_ID = -1;
+    private final int fileId;
     private final String fileName;
     private final String fileContent;
+    private final StoredContent storedContent;
+    private final FileMetadata metadata;
+    private volatile PreparedContent preparedContent;
 
     public FileItem () {
+        this.fileId = NO_ID;
         this.fileName = null;
         this.fileContent = null;
+        this.storedContent = null;
+        this.metadata = null;
     }
 
     public FileItem(String fileName, String fileContent) {
+        this(NO_ID, fileName, fileContent, null);
+    }
+
+    public FileItem(int fileId, String fileName, String fileContent, FileMetadata metadata) {
+        this.fileId = fileId;
         this.fileName = fileName;
         this.fileContent = fileContent;
+        this.storedContent = null;
+        this.metadata = metadata;
+    }
+
+    /**
+     * A file whose contents stay on disk (or in a mapping) until needed.
+     * @param fileId File Id
+     * @param fileName File Name
+     * @param storedContent Stored Contents
+     * @param metadata File Metadata
+     */
+    public FileItem(int fileId, String fileName, StoredContent storedContent, FileMetadata metadata) {
+        this.fileId = fileId;
+        this.fileName = fileName;
+        this.fileContent = null;
+        this.storedContent = storedContent;
+        this.metadata = metadata;
+    }
+
+    public int getFileId() {
+        return fileId;
     }
 
     public String getFileName() {
         return fileName;
     }
 
+    /**
+     * Get the contents as a String. For stored files this reads and decodes
+     * them every time, so prefer getPreparedContent().
+     * @return File Contents
+     */
     public String getFileContent() {
+        if (storedContent != null) {
+            return new String(storedContent.readChars());
+        }
         return fileContent;
     }
 
+    /**
+     * Path, size, modification time and content hash, if known.
+     * @return File Metadata, or null
+     */
+    public FileMetadata getMetadata() {
+        return metadata;
+    }
+
+    public boolean isStored() {
+        return storedContent != null;
+    }
+
+    /**
+     * Length of the contents, without reading them in. For stored files that
+     * are not prepared yet this is the size in bytes, which is the length in
+     * characters for ASCII text.
+     * @return Content Length
+     */
+    public long getContentLength() {
+        PreparedContent prepared = preparedContent;
+        if (prepared != null) {
+            return prepared.length();
+        }
+        if (storedContent != null) {
+            return storedContent.getSize();
+        }
+        return fileContent == null ? 0 : fileContent.length();
+    }
+
+    /**
+     * Get the prepared form of the contents, building it on first use.
+     * Safe to call from several comparison threads at once.
+     * @return Prepared Content
+     */
+    public PreparedContent getPreparedContent() {
+        PreparedContent prepared = preparedContent;
+        if (prepared == null) {
+            synchronized (this) {
+                prepared = preparedContent;
+                if (prepared == null) {
+                    if (storedContent != null) {
+                        prepared = new PreparedContent(storedContent.readChars());
+                    } else {
+                        prepared = new PreparedContent(fileContent);
+                    }
+                    preparedContent = prepared;
+                }
+            }
+        }
+
+        return prepared;
+    }
+
+    /**
+     * Drop the prepared form; it is rebuilt if needed again.
+     */
+    public void releasePreparedContent() {
+        preparedContent = null;
+    }
+
+    public boolean isPrepared() {
+        return preparedContent != null;
+    }
+
     @Override
     public boolean equals(Object inObj) {
         boolean valid = false;
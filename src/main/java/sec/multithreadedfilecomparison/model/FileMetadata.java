@@ -0,0 +1,73 @@
+package sec.multithreadedfilecomparison.model;
+
+/**
+ * Where a scanned file came from and what it contained, so a later session
+ * can tell whether it is still the same file.
+ */
+public class FileMetadata {
+    private final String relativePath;
+    private final long size;
+    private final long lastModified;
+    private final long contentHash;
+    private final boolean readFailed;
+
+    public FileMetadata(String relativePath, long size, long lastModified, long contentHash) {
+        this(relativePath, size, lastModified, contentHash, false);
+    }
+
+    /**
+     * @param readFailed Whether the file could not be read, so contentHash
+     *                   says nothing about what it holds
+     */
+    public FileMetadata(String relativePath, long size, long lastModified, long contentHash, boolean readFailed) {
+        this.relativePath = relativePath;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.contentHash = contentHash;
+        this.readFailed = readFailed;
+    }
+
+    public String getRelativePath() {
+        return relativePath;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * 64-bit hash of the file's raw bytes.
+     * @return Content Hash
+     */
+    public long getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Whether the file could not be read when it was scanned. Its content
+     * hash is then meaningless, so it matches no other file, nor itself in a
+     * later session.
+     * @return true if reading the file failed
+     */
+    public boolean isReadFailed() {
+        return readFailed;
+    }
+
+    /**
+     * Whether this describes the same file, unchanged.
+     * @param other Other Metadata
+     * @return true if path, size, modification time and hash all match, and
+     *         both reads succeeded
+     */
+    public boolean sameFileAs(FileMetadata other) {
+        return !readFailed && !other.readFailed &&
+                relativePath.equals(other.relativePath) &&
+                size == other.size &&
+                lastModified == other.lastModified &&
+                contentHash == other.contentHash;
+    }
+}
@@ -0,0 +1,61 @@
+package sec.multithreadedfilecomparison.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * The form of a file's contents that the similarity engines work on.
+ * Built once per file and shared by every comparison involving that file,
+ * along with any per-file indexes an engine wants to keep (match masks etc).
+ */
+public class PreparedContent {
+    private final char[] content;
+    private final ConcurrentHashMap<String, Index> indexes;
+
+    public PreparedContent(char[] content) {
+        this.content = content;
+        this.indexes = new ConcurrentHashMap<String, Index>();
+    }
+
+    public PreparedContent(String content) {
+        this(content.toCharArray());
+    }
+
+    public char[] getContent() {
+        return content;
+    }
+
+    public int length() {
+        return content.length;
+    }
+
+    /**
+     * Get an engine-specific index, building it on first use.
+     * @param key Index Name
+     * @param builder Builds the index from the contents
+     * @return Index
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Index> T getIndex(String key, Function<char[], T> builder) {
+        return (T)indexes.computeIfAbsent(key, k -> builder.apply(content));
+    }
+
+    /**
+     * Rough heap footprint of the contents and indexes, in bytes.
+     * @return Size in bytes
+     */
+    public long estimateSize() {
+        long size = 16L + content.length * 2L;
+        for (Index index : indexes.values()) {
+            size += index.estimateSize();
+        }
+        return size;
+    }
+
+    /**
+     * Per-file data an engine derives from the contents.
+     */
+    public interface Index {
+        long estimateSize();
+    }
+}
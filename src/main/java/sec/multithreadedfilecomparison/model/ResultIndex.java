@@ -0,0 +1,280 @@
+package sec.multithreadedfilecomparison.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The most similar results of a session so far, for "most similar files to
+ * X" and "top N pairs overall" while it runs, without keeping every result.
+ * Each file keeps its perFileCapacity most similar partners, and the
+ * session its globalCapacity most similar pairs, as bounded min-heaps in
+ * primitive arrays indexed by file id (ids are dense from 0, as the File
+ * Scanner gives them). Files without an id are not indexed.
+ * Results of pairs finished in an earlier, resumed session are only in the
+ * results file.
+ * Once the heaps fill, most results cannot enter any of them, so add()
+ * checks the lowest scores that can still get in before taking the lock.
+ */
+public class ResultIndex {
+
+    public static final int DEFAULT_PER_FILE_CAPACITY = 10;
+    public static final int DEFAULT_GLOBAL_CAPACITY = 1000;
+    private static final int INITIAL_FILES = 64;
+    private final int perFileCapacity;
+    private final int globalCapacity;
+    private FileItem[] files;
+    private long[] partnerIds;       // file id * perFileCapacity + slot
+    private double[] partnerScores;
+    private int[] numPartners;
+    private final long[] topPairKeys; // (file1 id << 32) | file2 id
+    private final double[] topScores;
+    private int numTop;
+    private long version;
+    // Read without the lock, so stale values must only let more results in:
+    // both only rise, and a file's floor stays 0 until its heap is full
+    private volatile double[] partnerFloors;
+    private volatile double topFloor;
+
+    public ResultIndex() {
+        this(DEFAULT_PER_FILE_CAPACITY, DEFAULT_GLOBAL_CAPACITY);
+    }
+
+    public ResultIndex(int perFileCapacity, int globalCapacity) {
+        if (perFileCapacity < 1 || globalCapacity < 1) {
+            throw new IllegalArgumentException("Capacities must be at least 1");
+        }
+        this.perFileCapacity = perFileCapacity;
+        this.globalCapacity = globalCapacity;
+        this.files = new FileItem[INITIAL_FILES];
+        this.partnerIds = new long[INITIAL_FILES * perFileCapacity];
+        this.partnerScores = new double[INITIAL_FILES * perFileCapacity];
+        this.numPartners = new int[INITIAL_FILES];
+        this.topPairKeys = new long[globalCapacity];
+        this.topScores = new double[globalCapacity];
+        this.numTop = 0;
+        this.version = 0;
+        this.partnerFloors = new double[INITIAL_FILES];
+        this.topFloor = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Take in a result, keeping it wherever it is among the most similar.
+     * Each pair should be added once.
+     * @param result Result (a similarity from 0 to 1)
+     */
+    public void add(ComparisonResult result) {
+        add(result.getComparisonPair().getFile1(), result.getComparisonPair().getFile2(), result.getSimilarity());
+    }
+
+    /**
+     * Take in a result, without it needing to be a ComparisonResult.
+     * @param file1 File 1
+     * @param file2 File 2
+     * @param score Similarity, from 0 to 1
+     */
+    public void add(FileItem file1, FileItem file2, double score) {
+        int id1 = file1.getFileId();
+        int id2 = file2.getFileId();
+        if (id1 < 0 || id2 < 0) {
+            return;
+        }
+
+        // A score tying a floor still goes through the lock, as a new file's
+        // floor of 0 does not mean its heap is full
+        if (score < topFloor) {
+            double[] floors = partnerFloors;
+            if (id1 < floors.length && id2 < floors.length && score < floors[id1] && score < floors[id2]) {
+                return;
+            }
+        }
+        addLocked(file1, file2, score);
+    }
+
+    private synchronized void addLocked(FileItem file1, FileItem file2, double score) {
+        int id1 = file1.getFileId();
+        int id2 = file2.getFileId();
+        ensureCapacity(Math.max(id1, id2));
+        files[id1] = file1;
+        files[id2] = file2;
+
+        boolean kept = offerPartner(id1, id2, score);
+        kept |= offerPartner(id2, id1, score);
+        if (numTop < globalCapacity) {
+            topPairKeys[numTop] = pairKey(id1, id2);
+            topScores[numTop] = score;
+            siftUp(topPairKeys, topScores, 0, numTop++);
+            kept = true;
+        } else if (score > topScores[0]) {
+            topPairKeys[0] = pairKey(id1, id2);
+            topScores[0] = score;
+            siftDown(topPairKeys, topScores, 0, numTop, 0);
+            kept = true;
+        }
+        if (numTop == globalCapacity) {
+            topFloor = topScores[0];
+        }
+
+        if (kept) {
+            version++;
+        }
+    }
+
+    /**
+     * The files most similar to a file, so far.
+     * @param fileItem File
+     * @param n Most results to return (at most perFileCapacity are kept)
+     * @return Results pairing the file with each partner, most similar first
+     */
+    public synchronized List<ComparisonResult> mostSimilarTo(FileItem fileItem, int n) {
+        int id = fileItem.getFileId();
+        if (id < 0 || id >= numPartners.length) {
+            return List.of();
+        }
+
+        int offset = id * perFileCapacity;
+        List<ComparisonResult> results = new ArrayList<ComparisonResult>(numPartners[id]);
+        for (int slot : mostSimilarFirst(partnerScores, offset, numPartners[id], n)) {
+            FileItem partner = files[(int)partnerIds[offset + slot]];
+            results.add(new ComparisonResult(new ComparisonPair(fileItem, partner), partnerScores[offset + slot]));
+        }
+        return results;
+    }
+
+    /**
+     * The most similar pairs overall, so far.
+     * @param n Most results to return (at most globalCapacity are kept)
+     * @return Results, most similar first
+     */
+    public synchronized List<ComparisonResult> topPairs(int n) {
+        List<ComparisonResult> results = new ArrayList<ComparisonResult>(Math.min(n, numTop));
+        for (int slot : mostSimilarFirst(topScores, 0, numTop, n)) {
+            FileItem file1 = files[(int)(topPairKeys[slot] >>> 32)];
+            FileItem file2 = files[(int)topPairKeys[slot]];
+            results.add(new ComparisonResult(new ComparisonPair(file1, file2), topScores[slot]));
+        }
+        return results;
+    }
+
+    /**
+     * Look up an indexed file by name.
+     * @param fileName File Name
+     * @return File, or null if none by that name has a result yet
+     */
+    public synchronized FileItem findFile(String fileName) {
+        for (FileItem fileItem : files) {
+            if (fileItem != null && fileItem.getFileName().equals(fileName)) {
+                return fileItem;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Goes up whenever a result is kept, so a view polling the index can
+     * tell whether anything has changed.
+     * @return Version
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    private boolean offerPartner(int id, int partnerId, double score) {
+        int offset = id * perFileCapacity;
+        int size = numPartners[id];
+        if (size < perFileCapacity) {
+            partnerIds[offset + size] = partnerId;
+            partnerScores[offset + size] = score;
+            siftUp(partnerIds, partnerScores, offset, size);
+            numPartners[id]++;
+            if (numPartners[id] == perFileCapacity) {
+                partnerFloors[id] = partnerScores[offset];
+            }
+            return true;
+        }
+        if (score > partnerScores[offset]) {
+            partnerIds[offset] = partnerId;
+            partnerScores[offset] = score;
+            siftDown(partnerIds, partnerScores, offset, size, 0);
+            partnerFloors[id] = partnerScores[offset];
+            return true;
+        }
+        return false;
+    }
+
+    private void ensureCapacity(int maxId) {
+        if (maxId < numPartners.length) {
+            return;
+        }
+
+        int capacity = Math.max(maxId + 1, numPartners.length * 2);
+        files = Arrays.copyOf(files, capacity);
+        partnerIds = Arrays.copyOf(partnerIds, capacity * perFileCapacity);
+        partnerScores = Arrays.copyOf(partnerScores, capacity * perFileCapacity);
+        numPartners = Arrays.copyOf(numPartners, capacity);
+        partnerFloors = Arrays.copyOf(partnerFloors, capacity);
+    }
+
+    private static long pairKey(int id1, int id2) {
+        return ((long)id1 << 32) | (id2 & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Slots of a heap in order of score, highest first.
+     */
+    private static int[] mostSimilarFirst(double[] scores, int offset, int size, int n) {
+        Integer[] slots = new Integer[size];
+        for (int ii=0; ii<size; ii++) {
+            slots[ii] = ii;
+        }
+        Arrays.sort(slots, (a, b) -> Double.compare(scores[offset + b], scores[offset + a]));
+
+        int[] top = new int[Math.max(0, Math.min(n, size))];
+        for (int ii=0; ii<top.length; ii++) {
+            top[ii] = slots[ii];
+        }
+        return top;
+    }
+
+    /**
+     * Min-heap on scores, in keys/scores[offset .. offset + size).
+     */
+    private static void siftUp(long[] keys, double[] scores, int offset, int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (scores[offset + parent] <= scores[offset + index]) {
+                return;
+            }
+            swap(keys, scores, offset + parent, offset + index);
+            index = parent;
+        }
+    }
+
+    private static void siftDown(long[] keys, double[] scores, int offset, int size, int index) {
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && scores[offset + left] < scores[offset + smallest]) {
+                smallest = left;
+            }
+            if (right < size && scores[offset + right] < scores[offset + smallest]) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(keys, scores, offset + index, offset + smallest);
+            index = smallest;
+        }
+    }
+
+    private static void swap(long[] keys, double[] scores, int ii, int jj) {
+        long key = keys[ii];
+        keys[ii] = keys[jj];
+        keys[jj] = key;
+        double score = scores[ii];
+        scores[ii] = scores[jj];
+        scores[jj] = score;
+    }
+}
@@ -0,0 +1,96 @@
+package sec.multithreadedfilecomparison.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * File contents kept out of the Java heap: either a memory-mapped view of the
+ * file, or just its path so it can be read again when needed. The bytes are
+ * the file's own UTF-8, which for ASCII source is one byte per character.
+ * Characters are only produced when a comparison asks for them.
+ */
+public class StoredContent {
+    private static final String READ_ERROR = "ERR: *Failed to extract file text*";
+    private final Path path;
+    private final long size;
+    private final ByteBuffer mapped;
+
+    public StoredContent(Path path, long size, ByteBuffer mapped) {
+        this.path = path;
+        this.size = size;
+        this.mapped = mapped;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Size of the file on disk, in bytes.
+     * @return Size in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public boolean isMapped() {
+        return mapped != null;
+    }
+
+    /**
+     * Get the raw bytes: a view of the mapping, or freshly read from disk.
+     * @return File Bytes
+     * @throws IOException Reading Error
+     */
+    public ByteBuffer readBytes() throws IOException {
+        if (mapped != null) {
+            return mapped.duplicate(); // own position, shared data
+        }
+        return ByteBuffer.wrap(Files.readAllBytes(path));
+    }
+
+    /**
+     * Decode the contents into characters.
+     * @return File Contents
+     */
+    public char[] readChars() {
+        ByteBuffer bytes;
+        try {
+            bytes = readBytes();
+        } catch (IOException e) {
+            System.out.println("Stored Content ERROR: " + e.getMessage());
+            return READ_ERROR.toCharArray();
+        }
+
+        // ASCII needs no decoding: widen each byte
+        int length = bytes.remaining();
+        char[] chars = new char[length];
+        for (int ii=0; ii<length; ii++) {
+            byte b = bytes.get(bytes.position() + ii);
+            if (b < 0) {
+                return decodeUtf8(bytes);
+            }
+            chars[ii] = (char)b;
+        }
+
+        return chars;
+    }
+
+    private static char[] decodeUtf8(ByteBuffer bytes) {
+        try {
+            CharBuffer decoded = StandardCharsets.UTF_8.newDecoder().decode(bytes);
+            char[] chars = new char[decoded.remaining()];
+            decoded.get(chars);
+            return chars;
+
+        } catch (CharacterCodingException e) {
+            System.out.println("Stored Content ERROR: " + e.getMessage());
+            return READ_ERROR.toCharArray();
+        }
+    }
+}
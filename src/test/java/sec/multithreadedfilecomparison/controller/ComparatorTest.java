@@ -0,0 +1,96 @@
+package sec.multithreadedfilecomparison.controller;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sec.multithreadedfilecomparison.model.ResultIndex;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pairs are made as files arrive, or a tile at a time, and either way every
+ * pair of files gets exactly one result, copies of a file included.
+ */
+public class ComparatorTest {
+
+    private static final int NUM_FILES = 40;
+    private static final int NUM_COPIES = 4;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void pairsMadeAsFilesArriveCoverEveryPairOnce() throws IOException, InterruptedException {
+        assertEveryPairOnce(compare(0));
+    }
+
+    @Test
+    public void tilesCoverEveryPairOnce() throws IOException, InterruptedException {
+        // Tiles small enough that blocks hold a few files each
+        assertEveryPairOnce(compare(200));
+    }
+
+    private Map<Long, AtomicInteger> compare(long tileBytes) throws IOException, InterruptedException {
+        Path corpus = Files.createDirectory(tempDir.resolve("corpus"));
+        for (int ii=0; ii<NUM_FILES; ii++) {
+            // The last few are copies of earlier files, to be given their results without comparing
+            int contentOf = ii < NUM_FILES - NUM_COPIES ? ii : ii - NUM_FILES / 2;
+            Files.writeString(corpus.resolve("file" + ii + ".txt"), ("line " + contentOf + "\n").repeat(1 + contentOf % 4));
+        }
+
+        RecordingListener listener = new RecordingListener();
+        FileScanner fileScanner = new FileScanner(corpus.toFile(), Set.of("txt"));
+        ResultsLogger resultsLogger = new ResultsLogger(tempDir.resolve("results.csv").toString());
+        Comparator comparator = new Comparator(fileScanner, resultsLogger, listener);
+        comparator.setNumComparisonThreads(4);
+        if (tileBytes > 0) {
+            comparator.setTiledAllPairs(tileBytes);
+        }
+
+        fileScanner.start();
+        resultsLogger.start();
+        comparator.start();
+        assertTrue(listener.finished.await(60, TimeUnit.SECONDS));
+        resultsLogger.stopAndWait();
+        return listener.resultsByPair;
+    }
+
+    private static void assertEveryPairOnce(Map<Long, AtomicInteger> resultsByPair) {
+        assertEquals(NUM_FILES * (NUM_FILES - 1) / 2, resultsByPair.size());
+        for (Map.Entry<Long, AtomicInteger> entry : resultsByPair.entrySet()) {
+            long key = entry.getKey();
+            assertTrue((key >>> 32) < (key & 0xFFFFFFFFL));
+            assertEquals(1, entry.getValue().get(), "pair " + (key >>> 32) + "," + (key & 0xFFFFFFFFL));
+        }
+    }
+
+    private static class RecordingListener implements ComparisonListener {
+        private final Map<Long, AtomicInteger> resultsByPair = new ConcurrentHashMap<Long, AtomicInteger>();
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        @Override
+        public void comparisonsStarted(ComparisonProgress progress, ResultIndex results) {
+        }
+
+        @Override
+        public void jobCompleted(int file1Id, int file2Id, double similarity) {
+            long key = ((long)Math.min(file1Id, file2Id) << 32) | Math.max(file1Id, file2Id);
+            resultsByPair.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+        }
+
+        @Override
+        public void comparisonsFinished() {
+            finished.countDown();
+        }
+    }
+}
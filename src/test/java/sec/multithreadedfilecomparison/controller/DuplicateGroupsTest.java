@@ -0,0 +1,75 @@
+package sec.multithreadedfilecomparison.controller;
+
+import org.junit.jupiter.api.Test;
+import sec.multithreadedfilecomparison.model.ComparisonPair;
+import sec.multithreadedfilecomparison.model.ComparisonResult;
+import sec.multithreadedfilecomparison.model.FileItem;
+import sec.multithreadedfilecomparison.model.FileMetadata;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Files join a group only when their contents are known to match, and the
+ * group's members get one result for every pair the representatives' results
+ * stand for.
+ */
+public class DuplicateGroupsTest {
+
+    @Test
+    public void everyPairOfMembersGetsOneResult() {
+        DuplicateGroups groups = new DuplicateGroups();
+        FileItem a0 = file(0, "alpha");
+        FileItem a1 = file(1, "alpha");
+        FileItem b2 = file(2, "beta");
+        FileItem b3 = file(3, "beta");
+        Map<String, Double> scores = new HashMap<String, Double>();
+
+        assertNull(groups.add(a0));
+        record(scores, groups.add(a1));
+        assertNull(groups.add(b2));
+        // The representatives' own result is the Comparator's; fanOut gives the rest
+        scores.put("2,0", 0.4);
+        record(scores, groups.fanOut(new ComparisonPair(b2, a0), 0.4));
+        // b3 arrives after the score is known, so gets it straight away
+        record(scores, groups.add(b3));
+
+        assertEquals(Map.of(
+                "1,0", 1.0,
+                "2,0", 0.4, "2,1", 0.4,
+                "3,0", 0.4, "3,1", 0.4, "3,2", 1.0), scores);
+        assertEquals(2, groups.getNumDuplicates());
+        assertEquals(5, groups.getPairsFannedOut());
+    }
+
+    @Test
+    public void unreadableFilesNeverGroup() {
+        DuplicateGroups groups = new DuplicateGroups();
+        for (int id=0; id<3; id++) {
+            String name = "unreadable" + id + ".txt";
+            FileMetadata metadata = new FileMetadata(name, 100, 1000, 0, true);
+            assertNull(groups.add(new FileItem(id, name, "ERR", metadata)));
+        }
+        assertEquals(0, groups.getNumDuplicates());
+    }
+
+    private static FileItem file(int fileId, String content) {
+        String name = "file" + fileId + ".txt";
+        return new FileItem(fileId, name, content, new FileMetadata(name, content.length(), 1000L + fileId, content.hashCode()));
+    }
+
+    /**
+     * Add results to those so far, failing if a pair has one already.
+     */
+    private static void record(Map<String, Double> scores, List<ComparisonResult> results) {
+        for (ComparisonResult result : results) {
+            String key = result.getComparisonPair().getFile1().getFileId() + "," +
+                    result.getComparisonPair().getFile2().getFileId();
+            assertNull(scores.put(key, result.getSimilarity()), "pair " + key);
+        }
+    }
+}
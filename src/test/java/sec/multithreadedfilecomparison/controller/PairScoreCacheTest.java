@@ -0,0 +1,107 @@
+package sec.multithreadedfilecomparison.controller;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The striped tables give back what was put, in either hash order, stay
+ * within their size, keep recently used scores, and survive a save and load.
+ */
+public class PairScoreCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void scoresComeBackInEitherOrder() {
+        PairScoreCache cache = newCache(100_000);
+        Map<Long, Double> expected = new HashMap<Long, Double>();
+        Random random = new Random(1);
+        for (int ii=0; ii<20_000; ii++) {
+            long hash1 = random.nextInt(5000);
+            long hash2 = random.nextInt(5000) + 5000;
+            double score = random.nextDouble();
+            cache.put(hash1, hash2, score);
+            expected.put(hash1 * 10_000 + hash2, score);
+        }
+
+        assertEquals(expected.size(), cache.size());
+        for (Map.Entry<Long, Double> e : expected.entrySet()) {
+            long hash1 = e.getKey() / 10_000;
+            long hash2 = e.getKey() % 10_000;
+            assertEquals(e.getValue(), cache.get(hash1, hash2));
+            assertEquals(e.getValue(), cache.get(hash2, hash1));
+        }
+        assertNull(cache.get(1, 1));
+    }
+
+    @Test
+    public void fullCacheDropsLeastRecentlyUsed() throws InterruptedException {
+        int maxEntries = 1000;
+        PairScoreCache cache = newCache(maxEntries);
+        for (long ii=0; ii<maxEntries; ii++) {
+            cache.put(ii, -ii, 0.5);
+        }
+        // Scores from long ago, then ones used since (recency is by the clock)
+        Thread.sleep(5);
+        for (long ii=0; ii<maxEntries / 2; ii++) {
+            cache.get(ii, -ii);
+        }
+        Thread.sleep(5);
+        for (long ii=maxEntries; ii<maxEntries * 3 / 2; ii++) {
+            cache.put(ii, -ii, 0.25);
+        }
+
+        assertTrue(cache.size() <= maxEntries, "size " + cache.size());
+        int recentKept = 0;
+        for (long ii=0; ii<maxEntries / 2; ii++) {
+            if (cache.get(ii, -ii) != null) {
+                recentKept++;
+            }
+        }
+        int newKept = 0;
+        for (long ii=maxEntries; ii<maxEntries * 3 / 2; ii++) {
+            if (cache.get(ii, -ii) != null) {
+                newKept++;
+            }
+        }
+        // Eviction is sampled, so only roughly least recently used
+        assertTrue(recentKept > maxEntries / 4, "recently used kept: " + recentKept);
+        assertTrue(newKept > maxEntries / 2 * 9 / 10, "new kept: " + newKept);
+    }
+
+    @Test
+    public void savedScoresLoadBack() {
+        File file = tempDir.resolve("scores.cache").toFile();
+        PairScoreCache cache = new PairScoreCache(file, PairScoreCache.CHAR_LCS, 10_000, 30);
+        for (long ii=0; ii<5000; ii++) {
+            cache.put(ii * 31, ii * 17 + 1, ii / 5000.0);
+        }
+        cache.save();
+
+        PairScoreCache loaded = new PairScoreCache(file, PairScoreCache.CHAR_LCS, 10_000, 30);
+        loaded.load();
+        assertEquals(5000, loaded.size());
+        for (long ii=0; ii<5000; ii++) {
+            assertEquals(Double.valueOf(ii / 5000.0), loaded.get(ii * 17 + 1, ii * 31));
+        }
+
+        PairScoreCache otherKind = new PairScoreCache(file, "line-lcs", 10_000, 30);
+        otherKind.load();
+        assertEquals(0, otherKind.size());
+    }
+
+    private PairScoreCache newCache(int maxEntries) {
+        return new PairScoreCache(tempDir.resolve("unused.cache").toFile(), PairScoreCache.CHAR_LCS, maxEntries, 30);
+    }
+}
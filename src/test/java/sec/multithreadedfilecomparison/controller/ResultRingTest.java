@@ -0,0 +1,70 @@
+package sec.multithreadedfilecomparison.controller;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Records come off the ring in the order they went on, across wrap-arounds,
+ * and closing it releases producers waiting on a full ring.
+ */
+public class ResultRingTest {
+
+    @Test
+    public void recordsComeOffInOrder() throws InterruptedException {
+        ResultRing ring = new ResultRing(8, 8);
+        ResultRing.Batch batch = new ResultRing.Batch(5);
+        int next = 0;
+        for (int round=0; round<10; round++) {
+            for (int ii=0; ii<7; ii++) {
+                ring.put(round, ii, round + ii / 10.0);
+            }
+            for (int ii=0; ii<7; ) {
+                int taken = ring.poll(batch, 1, TimeUnit.SECONDS);
+                assertTrue(taken > 0);
+                for (int jj=0; jj<taken; jj++, ii++) {
+                    assertEquals(round, batch.getFile1Id(jj));
+                    assertEquals(ii, batch.getFile2Id(jj));
+                    assertEquals(round + ii / 10.0, batch.getSimilarity(jj));
+                    next++;
+                }
+            }
+        }
+        assertEquals(70, next);
+        assertEquals(0, ring.drainTo(batch));
+    }
+
+    @Test
+    public void closeReleasesWaitingProducers() throws InterruptedException {
+        ResultRing ring = new ResultRing(2, 2);
+        ring.put(0, 1, 0.5);
+        ring.put(0, 2, 0.5);
+
+        AtomicReference<Throwable> thrown = new AtomicReference<Throwable>();
+        Thread producer = new Thread(() -> {
+            try {
+                ring.put(1, 2, 0.5); // full: waits
+            } catch (Throwable e) {
+                thrown.set(e);
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+
+        ring.close();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertTrue(thrown.get() instanceof IllegalStateException);
+        assertThrows(IllegalStateException.class, () -> ring.put(1, 3, 0.5));
+
+        // What was already in can still be taken
+        assertEquals(2, ring.drainTo(new ResultRing.Batch(4)));
+    }
+}
@@ -0,0 +1,201 @@
+package sec.multithreadedfilecomparison.controller;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sec.multithreadedfilecomparison.model.ComparisonPair;
+import sec.multithreadedfilecomparison.model.ComparisonResult;
+import sec.multithreadedfilecomparison.model.FileItem;
+import sec.multithreadedfilecomparison.model.FileMetadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A session resumed from its checkpoint carries on with the same file
+ * numbers and completed pairs as at its last commit, and with the results
+ * file cut back to match. Records torn by a crash are dropped.
+ */
+public class SessionCheckpointTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void crashBetweenRegisteringAndCommitting() throws IOException, InterruptedException {
+        FileItem a = file(0, "a.txt", "alpha");
+        FileItem b = file(1, "b.txt", "beta");
+        FileItem c = file(2, "c.txt", "gamma");
+        FileItem d = file(3, "d.txt", "delta");
+
+        // First run: a and b committed, then c registered and crashed before a commit
+        SessionCheckpoint checkpoint = open();
+        ResultsLogger logger = startLogger();
+        int numberA = checkpoint.registerFile(a);
+        int numberB = checkpoint.registerFile(b);
+        logPair(checkpoint, logger, a, numberA, b, numberB);
+        assertTrue(checkpoint.commit(logger));
+        int numberC = checkpoint.registerFile(c);
+        logPair(checkpoint, logger, a, numberA, c, numberC);
+        checkpoint.close();
+        logger.stopAndWait();
+        assertEquals(2, countLines());
+
+        // Second run: c is new again, and its result is cut from the results file
+        checkpoint = open();
+        assertTrue(checkpoint.isResumed());
+        assertEquals(1, countLines());
+        assertEquals(numberA, checkpoint.registerFile(a));
+        assertEquals(numberB, checkpoint.registerFile(b));
+        assertTrue(checkpoint.isCompleted(numberA, numberB));
+        int numberD = checkpoint.registerFile(d);
+        numberC = checkpoint.registerFile(c);
+        assertFalse(checkpoint.isCompleted(numberA, numberC));
+        assertFalse(checkpoint.isCompleted(numberA, numberD));
+        logger = startLogger();
+        logPair(checkpoint, logger, a, numberA, d, numberD);
+        assertTrue(checkpoint.commit(logger));
+        checkpoint.close();
+        logger.stopAndWait();
+
+        // Third run: the numbers given out in the second are the ones on disk
+        checkpoint = open();
+        assertEquals(numberA, checkpoint.registerFile(a));
+        assertEquals(numberB, checkpoint.registerFile(b));
+        assertEquals(numberD, checkpoint.registerFile(d));
+        assertEquals(numberC, checkpoint.registerFile(c));
+        assertTrue(checkpoint.isCompleted(numberA, numberD));
+        assertFalse(checkpoint.isCompleted(numberA, numberC));
+        assertEquals(2, checkpoint.getNumCompletedPairs());
+        assertEquals(2, countLines());
+        checkpoint.close();
+    }
+
+    @Test
+    public void committedSessionLoadsBack() throws IOException, InterruptedException {
+        FileItem a = file(0, "a.txt", "alpha");
+        FileItem b = file(1, "b.txt", "beta");
+        FileItem c = file(2, "c.txt", "gamma");
+
+        SessionCheckpoint checkpoint = open();
+        assertFalse(checkpoint.isResumed());
+        ResultsLogger logger = startLogger();
+        int numberA = checkpoint.registerFile(a);
+        int numberB = checkpoint.registerFile(b);
+        int numberC = checkpoint.registerFile(c);
+        logPair(checkpoint, logger, b, numberB, a, numberA);
+        logPair(checkpoint, logger, c, numberC, a, numberA);
+        assertTrue(checkpoint.commit(logger));
+        checkpoint.close();
+        logger.stopAndWait();
+
+        checkpoint = open();
+        assertTrue(checkpoint.isResumed());
+        assertEquals(resultsFileName(), checkpoint.getResultsFileName());
+        assertEquals("CSV", checkpoint.getResultsFormat());
+        assertEquals(2, checkpoint.getNumCompletedPairs());
+        assertEquals(numberC, checkpoint.registerFile(c));
+        assertEquals(numberA, checkpoint.registerFile(a));
+        assertEquals(numberB, checkpoint.registerFile(b));
+        assertTrue(checkpoint.isCompleted(numberA, numberB));
+        assertTrue(checkpoint.isCompleted(numberC, numberA));
+        assertFalse(checkpoint.isCompleted(numberB, numberC));
+        assertEquals(2, countLines());
+
+        // A finished session leaves nothing to resume
+        checkpoint.finish();
+        assertFalse(checkpointFile().exists());
+        checkpoint = open();
+        assertFalse(checkpoint.isResumed());
+        checkpoint.close();
+    }
+
+    @Test
+    public void tornRecordsAndResultsAreCutBack() throws IOException, InterruptedException {
+        FileItem a = file(0, "a.txt", "alpha");
+        FileItem b = file(1, "b.txt", "beta");
+        FileItem c = file(2, "c.txt", "gamma");
+
+        SessionCheckpoint checkpoint = open();
+        ResultsLogger logger = startLogger();
+        int numberA = checkpoint.registerFile(a);
+        int numberB = checkpoint.registerFile(b);
+        logPair(checkpoint, logger, a, numberA, b, numberB);
+        assertTrue(checkpoint.commit(logger));
+        checkpoint.close();
+        logger.stopAndWait();
+        long committedCheckpointLength = checkpointFile().length();
+        long committedResultsLength = new File(resultsFileName()).length();
+
+        // Crash part way through writing a pair record, and a results line
+        Files.write(checkpointFile().toPath(), new byte[] {'P', 0, 0, 0, 1, 0}, StandardOpenOption.APPEND);
+        Files.writeString(Path.of(resultsFileName()), "b.txt,c.t", StandardOpenOption.APPEND);
+
+        checkpoint = open();
+        assertTrue(checkpoint.isResumed());
+        assertEquals(committedCheckpointLength, checkpointFile().length());
+        assertEquals(committedResultsLength, new File(resultsFileName()).length());
+        assertEquals(1, checkpoint.getNumCompletedPairs());
+
+        // Records written after the cut read back as usual
+        assertEquals(numberA, checkpoint.registerFile(a));
+        assertEquals(numberB, checkpoint.registerFile(b));
+        int numberC = checkpoint.registerFile(c);
+        logger = startLogger();
+        logPair(checkpoint, logger, c, numberC, b, numberB);
+        assertTrue(checkpoint.commit(logger));
+        checkpoint.close();
+        logger.stopAndWait();
+
+        checkpoint = open();
+        assertEquals(numberC, checkpoint.registerFile(c));
+        assertTrue(checkpoint.isCompleted(numberB, numberC));
+        assertEquals(2, checkpoint.getNumCompletedPairs());
+        assertEquals(2, countLines());
+        checkpoint.close();
+    }
+
+    private SessionCheckpoint open() throws IOException {
+        return SessionCheckpoint.open(checkpointFile(), tempDir.toFile(), resultsFileName(), "CSV");
+    }
+
+    private File checkpointFile() {
+        return tempDir.resolve("session.ckpt").toFile();
+    }
+
+    private String resultsFileName() {
+        return tempDir.resolve("results.csv").toString();
+    }
+
+    private ResultsLogger startLogger() {
+        ResultsLogger logger = new ResultsLogger(resultsFileName());
+        logger.start();
+        return logger;
+    }
+
+    private long countLines() throws IOException {
+        return Files.readAllLines(Path.of(resultsFileName())).size();
+    }
+
+    private static FileItem file(int fileId, String name, String content) {
+        FileMetadata metadata = new FileMetadata(name, content.length(), 1000L + fileId, content.hashCode());
+        return new FileItem(fileId, name, content, metadata);
+    }
+
+    private static void logPair(SessionCheckpoint checkpoint, ResultsLogger logger,
+                                FileItem file1, int number1, FileItem file2, int number2) throws InterruptedException {
+        checkpoint.beginPair();
+        try {
+            logger.putNextResult(new ComparisonResult(new ComparisonPair(file1, file2), 0.5));
+            checkpoint.markCompleted(number1, number2);
+        } finally {
+            checkpoint.endPair();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package sec.multithreadedfilecomparison.helper;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sec.multithreadedfilecomparison.controller.BinaryResultSink;
+import sec.multithreadedfilecomparison.controller.FileNameTable;
+import sec.multithreadedfilecomparison.model.FileItem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Binary results files are read back record for record, and a last block
+ * cut short by a crash is ignored, both when reading and when appending.
+ */
+public class BinaryResultsReaderTest {
+
+    private static final int NUM_FILES = 20;
+    private static final int RECORDS_PER_BLOCK = 50;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void readsBackWhatWasWritten() throws IOException {
+        Path file = tempDir.resolve("results.bin");
+        List<String> written = writeBlocks(file, 0, 3);
+        assertEquals(written, readAll(file));
+    }
+
+    @Test
+    public void blockCutShortIsIgnored() throws IOException {
+        Path file = tempDir.resolve("results.bin");
+        List<String> firstTwo = writeBlocks(file, 0, 2);
+        long twoBlocks = Files.size(file);
+        writeBlocks(file, 2, 1);
+        byte[] bytes = Files.readAllBytes(file);
+
+        Path cut = tempDir.resolve("cut.bin");
+        for (long length=twoBlocks; length<bytes.length; length++) {
+            Files.write(cut, Arrays.copyOf(bytes, (int)length));
+            assertEquals(firstTwo, readAll(cut), "cut at " + length);
+            assertEquals(NUM_FILES, BinaryResultsReader.readDictionary(cut.toString()).size());
+            try (BinaryResultsReader reader = new BinaryResultsReader(cut.toString())) {
+                reader.readRemainingBlocks();
+                assertEquals(twoBlocks, reader.getCompleteLength());
+            }
+        }
+    }
+
+    @Test
+    public void zeroFilledTailIsIgnored() throws IOException {
+        Path file = tempDir.resolve("results.bin");
+        List<String> written = writeBlocks(file, 0, 2);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length + 100));
+        assertEquals(written, readAll(file));
+    }
+
+    @Test
+    public void appendingDropsBlockCutShort() throws IOException {
+        Path file = tempDir.resolve("results.bin");
+        List<String> expected = writeBlocks(file, 0, 2);
+        long twoBlocks = Files.size(file);
+        writeBlocks(file, 2, 1);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, (int)(twoBlocks + (bytes.length - twoBlocks) / 2)));
+
+        expected.addAll(writeBlocks(file, 3, 2));
+        assertEquals(expected, readAll(file));
+    }
+
+    @Test
+    public void headerCutShortStartsAgain() throws IOException {
+        Path file = tempDir.resolve("results.bin");
+        Files.write(file, new byte[] { 0x4D, 0x46, 0x43 });
+        List<String> written = writeBlocks(file, 0, 1);
+        assertEquals(written, readAll(file));
+    }
+
+    @Test
+    public void blockWithTooFewCompressedBytesIsCorrupt() throws IOException {
+        Path file = tempDir.resolve("results.bin");
+        writeBlocks(file, 0, 1);
+        byte[] bytes = Files.readAllBytes(file);
+
+        // Keep the first half of the deflated bytes, and say that is all there is
+        int compressedLength = ByteBuffer.wrap(bytes, BinaryResultsReader.HEADER_SIZE + 4, 4).getInt();
+        int keptLength = compressedLength / 2;
+        byte[] cut = Arrays.copyOf(bytes, BinaryResultsReader.HEADER_SIZE + BinaryResultsReader.BLOCK_HEADER_SIZE + keptLength);
+        ByteBuffer.wrap(cut, BinaryResultsReader.HEADER_SIZE + 4, 4).putInt(keptLength);
+        Files.write(file, cut);
+
+        IOException thrown = assertThrows(IOException.class, () -> readAll(file));
+        assertTrue(thrown.getMessage().startsWith("Corrupt results block"), thrown.getMessage());
+    }
+
+    /**
+     * Append blocks of records to a results file, one sink per call as a
+     * new session would.
+     * @return The records written, as 'file1,file2,similarity'
+     */
+    private static List<String> writeBlocks(Path file, int firstBlock, int numBlocks) throws IOException {
+        FileNameTable fileNames = new FileNameTable();
+        for (int id=0; id<NUM_FILES; id++) {
+            fileNames.register(new FileItem(id, "file-" + id + ".txt", "", null));
+        }
+
+        List<String> written = new ArrayList<String>();
+        BinaryResultSink sink = new BinaryResultSink(file.toString(), fileNames);
+        for (int block=firstBlock; block<firstBlock+numBlocks; block++) {
+            for (int ii=0; ii<RECORDS_PER_BLOCK; ii++) {
+                int id1 = (block * 7 + ii) % NUM_FILES;
+                int id2 = (block + ii * 3 + 1) % NUM_FILES;
+                float similarity = (block * RECORDS_PER_BLOCK + ii) / 1000.0f;
+                sink.write(id1, id2, similarity);
+                written.add(fileNames.getName(id1) + "," + fileNames.getName(id2) + "," + similarity);
+            }
+            sink.flush(); // one block per flush
+        }
+        sink.close();
+        return written;
+    }
+
+    private static List<String> readAll(Path file) throws IOException {
+        List<String> records = new ArrayList<String>();
+        try (BinaryResultsReader reader = new BinaryResultsReader(file.toString())) {
+            while (reader.next()) {
+                records.add(reader.getFile1Name() + "," + reader.getFile2Name() + "," + reader.getSimilarity());
+            }
+        }
+        return records;
+    }
+}
@@ -0,0 +1,88 @@
+package sec.multithreadedfilecomparison.helper;
+
+import org.junit.jupiter.api.Test;
+import sec.multithreadedfilecomparison.model.PreparedContent;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The bit-parallel engine must give exactly the scores of the original DP.
+ */
+public class BitParallelLcsEngineTest {
+
+    private final SimilarityEngine engine = new BitParallelLcsEngine();
+
+    @Test
+    public void matchesDpOnRandomPairs() {
+        for (String[] pair : TestContents.randomPairs(2L, 400, 300)) {
+            assertMatchesDp(pair[0], pair[1]);
+        }
+    }
+
+    @Test
+    public void emptyInputs() {
+        assertEquals(1.0, engine.calcSimilarity("", ""));
+        assertEquals(0.0, engine.calcSimilarity("", "abc"));
+        assertEquals(0.0, engine.calcSimilarity("abc", ""));
+    }
+
+    @Test
+    public void lengthsAroundWordBoundary() {
+        Random random = new Random(64);
+        int[] lengths = { 1, 63, 64, 65, 127, 128, 129 };
+        for (int n : new int[] { 63, 64, 65 }) {
+            for (int m : lengths) {
+                for (String alphabet : new String[] { TestContents.BINARY, TestContents.ASCII }) {
+                    String first = TestContents.random(random, n, alphabet);
+                    assertMatchesDp(first, TestContents.random(random, m, alphabet));
+                    assertMatchesDp(first, TestContents.edit(random, first, 0.1, alphabet));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void identicalContentsScoreOne() {
+        Random random = new Random(1);
+        for (int n : new int[] { 1, 63, 64, 65, 1000 }) {
+            String content = TestContents.random(random, n, TestContents.ASCII);
+            assertEquals(1.0, engine.calcSimilarity(content, content));
+        }
+    }
+
+    @Test
+    public void nonAsciiCharacters() {
+        Random random = new Random(3);
+        for (int ii=0; ii<100; ii++) {
+            String first = TestContents.random(random, random.nextInt(200), TestContents.NON_ASCII);
+            assertMatchesDp(first, TestContents.random(random, random.nextInt(200), TestContents.NON_ASCII));
+            assertMatchesDp(first, TestContents.edit(random, first, 0.2, TestContents.NON_ASCII));
+        }
+
+        // Characters past the mask table only match themselves
+        assertMatchesDp("ĀȀ̀", "\u0000ĀȀ");
+        assertMatchesDp("中文中", "文中");
+    }
+
+    @Test
+    public void masksReusedAcrossPairs() {
+        // The shorter file keeps its masks; later pairs must not be affected by them
+        Random random = new Random(4);
+        String shortContent = TestContents.random(random, 150, TestContents.DNA);
+        PreparedContent prepared = new PreparedContent(shortContent);
+        for (int ii=0; ii<50; ii++) {
+            String other = TestContents.edit(random, shortContent + shortContent, 0.2, TestContents.DNA);
+            assertEquals(Helpers.calcSimilarity(shortContent, other),
+                    engine.calcSimilarity(prepared, new PreparedContent(other)));
+            assertEquals(Helpers.calcSimilarity(other, shortContent),
+                    engine.calcSimilarity(new PreparedContent(other), prepared));
+        }
+    }
+
+    private void assertMatchesDp(String first, String second) {
+        assertEquals(Helpers.calcSimilarity(first, second), engine.calcSimilarity(first, second),
+                "'" + first + "' vs '" + second + "'");
+    }
+}
@@ -0,0 +1,58 @@
+package sec.multithreadedfilecomparison.helper;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Sets merged from many threads at once end up as if merged one at a time,
+ * each standing under its smallest id, including across chunks.
+ */
+public class ConcurrentUnionFindTest {
+
+    private static final int NUM_SETS = 7;
+    private static final int NUM_IDS = 200_000; // several chunks
+    private static final int NUM_THREADS = 4;
+
+    @Test
+    public void unionsMergeSets() {
+        ConcurrentUnionFind sets = new ConcurrentUnionFind();
+        assertEquals(5, sets.find(5));
+        assertTrue(sets.union(5, 3));
+        assertTrue(sets.union(70_000, 5));
+        assertFalse(sets.union(3, 70_000));
+        assertEquals(3, sets.find(70_000));
+        assertEquals(4, sets.find(4));
+        assertThrows(IllegalArgumentException.class, () -> sets.find(-1));
+    }
+
+    @Test
+    public void concurrentUnionsGiveSmallestRoots() throws InterruptedException {
+        ConcurrentUnionFind sets = new ConcurrentUnionFind();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int tt=0; tt<NUM_THREADS; tt++) {
+            int offset = tt;
+            Thread thread = new Thread(() -> {
+                // Each thread links a different subset of neighbours in each set, from the top down
+                for (int id=NUM_IDS - 1 - offset; id>=NUM_SETS; id-=NUM_THREADS) {
+                    sets.union(id, id - NUM_SETS);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int id=0; id<NUM_IDS; id++) {
+            assertEquals(id % NUM_SETS, sets.find(id));
+        }
+    }
+}
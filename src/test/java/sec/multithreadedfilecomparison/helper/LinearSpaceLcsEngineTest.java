@@ -0,0 +1,59 @@
+package sec.multithreadedfilecomparison.helper;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The two-row engine must give exactly the scores of the original DP.
+ */
+public class LinearSpaceLcsEngineTest {
+
+    private final SimilarityEngine engine = new LinearSpaceLcsEngine();
+
+    @Test
+    public void matchesDpOnRandomPairs() {
+        for (String[] pair : TestContents.randomPairs(1L, 400, 300)) {
+            assertMatchesDp(pair[0], pair[1]);
+        }
+    }
+
+    @Test
+    public void emptyInputs() {
+        assertEquals(1.0, engine.calcSimilarity("", ""));
+        assertEquals(0.0, engine.calcSimilarity("", "abc"));
+        assertEquals(0.0, engine.calcSimilarity("abc", ""));
+    }
+
+    @Test
+    public void singleCharacters() {
+        assertMatchesDp("a", "a");
+        assertMatchesDp("a", "b");
+        assertMatchesDp("a", "bab");
+    }
+
+    @Test
+    public void symmetric() {
+        // Rows run along whichever file is shorter, so the order must not matter
+        for (String[] pair : TestContents.randomPairs(11L, 100, 200)) {
+            assertEquals(LinearSpaceLcsEngine.lcsLength(pair[0].toCharArray(), pair[1].toCharArray()),
+                    LinearSpaceLcsEngine.lcsLength(pair[1].toCharArray(), pair[0].toCharArray()));
+        }
+    }
+
+    @Test
+    public void nonAsciiCharacters() {
+        Random random = new Random(5);
+        for (int ii=0; ii<100; ii++) {
+            String first = TestContents.random(random, random.nextInt(200), TestContents.NON_ASCII);
+            assertMatchesDp(first, TestContents.edit(random, first, 0.2, TestContents.NON_ASCII));
+        }
+    }
+
+    private void assertMatchesDp(String first, String second) {
+        assertEquals(Helpers.calcSimilarity(first, second), engine.calcSimilarity(first, second),
+                "'" + first + "' vs '" + second + "'");
+    }
+}
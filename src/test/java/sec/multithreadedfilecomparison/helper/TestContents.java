@@ -0,0 +1,94 @@
+package sec.multithreadedfilecomparison.helper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Contents for checking the LCS engines against the original DP
+ * (Helpers.calcSimilarity). Pairs are a mix of unrelated strings and
+ * copies with a few edits, over alphabets from two letters (long common
+ * sub-sequences) up to characters well outside ASCII.
+ */
+public class TestContents {
+
+    public static final String BINARY = "ab";
+    public static final String DNA = "acgt";
+    public static final String ASCII = " \n\tabcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789{}();=+-*/.,";
+    public static final String NON_ASCII = "aé€中文ßÿĀ￿😀🙂"; // includes surrogate pairs
+    private static final String[] ALPHABETS = { BINARY, DNA, ASCII, NON_ASCII };
+
+    private TestContents() {
+    }
+
+    /**
+     * A string of the given length (in chars) drawn from an alphabet.
+     * @param random Random
+     * @param length Length
+     * @param alphabet Characters to draw from
+     * @return Contents
+     */
+    public static String random(Random random, int length, String alphabet) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int ii=0; ii<length; ii++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A copy of the contents with roughly rate of its characters replaced,
+     * dropped or doubled.
+     * @param random Random
+     * @param content Contents
+     * @param rate Edits per character
+     * @param alphabet Characters to draw replacements from
+     * @return Edited Contents
+     */
+    public static String edit(Random random, String content, double rate, String alphabet) {
+        StringBuilder sb = new StringBuilder(content.length());
+        for (int ii=0; ii<content.length(); ii++) {
+            char c = content.charAt(ii);
+            if (random.nextDouble() >= rate) {
+                sb.append(c);
+                continue;
+            }
+            switch (random.nextInt(3)) {
+                case 0:
+                    sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                    break;
+                case 1:
+                    break;
+                default:
+                    sb.append(c).append(c);
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Random pairs of up to maxLength chars each, over every alphabet.
+     * Half are unrelated, half are edited copies of each other.
+     * @param seed Seed
+     * @param count Number of pairs
+     * @param maxLength Longest contents
+     * @return Pairs
+     */
+    public static List<String[]> randomPairs(long seed, int count, int maxLength) {
+        Random random = new Random(seed);
+        List<String[]> pairs = new ArrayList<String[]>();
+        for (int ii=0; ii<count; ii++) {
+            String alphabet = ALPHABETS[ii % ALPHABETS.length];
+            String first = random(random, random.nextInt(maxLength + 1), alphabet);
+            String second;
+            if (random.nextBoolean()) {
+                second = random(random, random.nextInt(maxLength + 1), alphabet);
+            } else {
+                second = edit(random, first, random.nextDouble() * 0.3, alphabet);
+            }
+            pairs.add(new String[] { first, second });
+        }
+        return pairs;
+    }
+}
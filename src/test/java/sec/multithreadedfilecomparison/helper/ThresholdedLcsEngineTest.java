@@ -0,0 +1,93 @@
+package sec.multithreadedfilecomparison.helper;
+
+import org.junit.jupiter.api.Test;
+import sec.multithreadedfilecomparison.model.PreparedContent;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The thresholded engine must give the exact DP score for every pair at or
+ * above its threshold, and BELOW_THRESHOLD for every pair under it, however
+ * the pair was rejected.
+ */
+public class ThresholdedLcsEngineTest {
+
+    private static final double[] THRESHOLDS = { 0.0, 0.3, 0.5, 0.8, 0.95 };
+
+    @Test
+    public void matchesDpOnRandomPairs() {
+        for (double threshold : THRESHOLDS) {
+            SimilarityEngine engine = new ThresholdedLcsEngine(threshold, new BitParallelLcsEngine());
+            for (String[] pair : TestContents.randomPairs(5L, 200, 300)) {
+                assertMatchesDp(engine, threshold, pair[0], pair[1]);
+            }
+        }
+    }
+
+    @Test
+    public void emptyInputs() {
+        SimilarityEngine engine = new ThresholdedLcsEngine(0.5, new BitParallelLcsEngine());
+        assertEquals(1.0, engine.calcSimilarity("", ""));
+        assertEquals(ThresholdedLcsEngine.BELOW_THRESHOLD, engine.calcSimilarity("", "abc"));
+        assertEquals(ThresholdedLcsEngine.BELOW_THRESHOLD, engine.calcSimilarity("abc", ""));
+    }
+
+    @Test
+    public void bandedPairsNearThreshold() {
+        // Long, nearly identical files with a high threshold take the banded DP
+        Random random = new Random(6);
+        for (double threshold : new double[] { 0.98, 0.99 }) {
+            ThresholdedLcsEngine engine = new ThresholdedLcsEngine(threshold, new BitParallelLcsEngine());
+            for (int ii=0; ii<10; ii++) {
+                String first = TestContents.random(random, 5000, TestContents.DNA);
+                String second = TestContents.edit(random, first, random.nextDouble() * 0.05, TestContents.DNA);
+                assertMatchesLinearSpace(engine, threshold, first, second);
+            }
+            assertTrue(engine.getRejectionSummary().endsWith("; 0 full comparisons"), engine.getRejectionSummary());
+        }
+    }
+
+    @Test
+    public void bandedLcsIsExactAtOrAboveMinMatches() {
+        Random random = new Random(7);
+        for (int ii=0; ii<300; ii++) {
+            char[] first = TestContents.random(random, 1 + random.nextInt(150), TestContents.DNA).toCharArray();
+            char[] second = TestContents.edit(random, new String(first), random.nextDouble() * 0.3, TestContents.DNA).toCharArray();
+            int exact = LinearSpaceLcsEngine.lcsLength(first, second);
+            int minMatches = random.nextInt(Math.min(first.length, second.length) + 1);
+            int banded = ThresholdedLcsEngine.bandedLcsLength(first, second, minMatches);
+            if (exact >= minMatches) {
+                assertEquals(exact, banded);
+            } else {
+                assertTrue(banded <= exact, banded + " > " + exact);
+            }
+        }
+    }
+
+    @Test
+    public void nonCharacterEngineRunsExactly() {
+        TokenDictionary dictionary = new TokenDictionary();
+        SimilarityEngine exact = new TokenLcsEngine(ComparisonMode.TOKEN, dictionary);
+        SimilarityEngine engine = new ThresholdedLcsEngine(0.5, exact);
+        for (String[] pair : TestContents.randomPairs(8L, 100, 200)) {
+            double expected = exact.calcSimilarity(pair[0], pair[1]);
+            assertEquals(expected >= 0.5 ? expected : ThresholdedLcsEngine.BELOW_THRESHOLD,
+                    engine.calcSimilarity(new PreparedContent(pair[0]), new PreparedContent(pair[1])));
+        }
+    }
+
+    private void assertMatchesDp(SimilarityEngine engine, double threshold, String first, String second) {
+        double expected = Helpers.calcSimilarity(first, second);
+        assertEquals(expected >= threshold ? expected : ThresholdedLcsEngine.BELOW_THRESHOLD,
+                engine.calcSimilarity(first, second), "'" + first + "' vs '" + second + "'");
+    }
+
+    private void assertMatchesLinearSpace(SimilarityEngine engine, double threshold, String first, String second) {
+        double expected = new LinearSpaceLcsEngine().calcSimilarity(first, second);
+        assertEquals(expected >= threshold ? expected : ThresholdedLcsEngine.BELOW_THRESHOLD,
+                engine.calcSimilarity(first, second));
+    }
+}
@@ -0,0 +1,147 @@
+package sec.multithreadedfilecomparison.helper;
+
+import org.junit.jupiter.api.Test;
+import sec.multithreadedfilecomparison.model.PreparedContent;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The token engine must score a pair exactly as the original DP scores
+ * the two files' id sequences. Ids are turned into chars for the DP, which
+ * is fine while the dictionary stays under 65536 entries.
+ */
+public class TokenLcsEngineTest {
+
+    private static final String[] WORDS = { "int", "x", "y", "=", "+", "(", ")", ";", "return", "for", "i", "0", "1", "é", "中文" };
+
+    @Test
+    public void lineModeMatchesDp() {
+        Random random = new Random(19);
+        for (int ii=0; ii<200; ii++) {
+            String first = randomSource(random, random.nextInt(120));
+            String second = random.nextBoolean() ? randomSource(random, random.nextInt(120)) : editLines(random, first);
+            assertMatchesDp(ComparisonMode.LINE, first, second);
+        }
+    }
+
+    @Test
+    public void tokenModeMatchesDp() {
+        Random random = new Random(20);
+        for (int ii=0; ii<200; ii++) {
+            String first = randomSource(random, random.nextInt(120));
+            String second = random.nextBoolean() ? randomSource(random, random.nextInt(120)) : editLines(random, first);
+            assertMatchesDp(ComparisonMode.TOKEN, first, second);
+        }
+        for (String[] pair : TestContents.randomPairs(21L, 200, 300)) {
+            assertMatchesDp(ComparisonMode.TOKEN, pair[0], pair[1]);
+        }
+    }
+
+    @Test
+    public void emptyInputs() {
+        for (ComparisonMode mode : new ComparisonMode[] { ComparisonMode.LINE, ComparisonMode.TOKEN }) {
+            SimilarityEngine engine = new TokenLcsEngine(mode, new TokenDictionary());
+            assertEquals(1.0, engine.calcSimilarity("", ""));
+            assertEquals(1.0, engine.calcSimilarity(" \n\t", "\n\n")); // whitespace only: no ids
+            assertEquals(0.0, engine.calcSimilarity("", "x = 1;"));
+            assertEquals(0.0, engine.calcSimilarity("x = 1;", "  "));
+        }
+    }
+
+    @Test
+    public void sequencesAroundWordBoundary() {
+        Random random = new Random(64);
+        for (int n : new int[] { 63, 64, 65 }) {
+            for (int m : new int[] { 1, 63, 64, 65, 129 }) {
+                int[] ids1 = randomIds(random, n, 5);
+                int[] ids2 = randomIds(random, m, 5);
+                assertEquals(TokenLcsEngine.dpLcsLength(ids1, ids2), TokenLcsEngine.lcsLength(ids1, ids2));
+                assertEquals(TokenLcsEngine.dpLcsLength(ids2, ids1), TokenLcsEngine.lcsLength(ids2, ids1));
+            }
+        }
+    }
+
+    @Test
+    public void dpFallbackMatchesMasks() {
+        // Masks refused for being too large: the DP must give the same LCS
+        Random random = new Random(22);
+        for (int ii=0; ii<100; ii++) {
+            int[] ids1 = randomIds(random, random.nextInt(300), 1 + random.nextInt(200));
+            int[] ids2 = randomIds(random, random.nextInt(300), 1 + random.nextInt(200));
+            assertNull(TokenLcsEngine.IdMasks.build(ids1, 0));
+            assertEquals(TokenLcsEngine.lcsLength(ids1, ids2), TokenLcsEngine.dpLcsLength(ids1, ids2));
+        }
+    }
+
+    @Test
+    public void characterModeRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenLcsEngine(ComparisonMode.CHARACTER, new TokenDictionary()));
+    }
+
+    private static void assertMatchesDp(ComparisonMode mode, String first, String second) {
+        TokenDictionary dictionary = new TokenDictionary();
+        SimilarityEngine engine = new TokenLcsEngine(mode, dictionary);
+        double actual = engine.calcSimilarity(new PreparedContent(first), new PreparedContent(second));
+
+        String ids1 = asChars(TokenLcsEngine.tokenize(first.toCharArray(), mode, dictionary));
+        String ids2 = asChars(TokenLcsEngine.tokenize(second.toCharArray(), mode, dictionary));
+        assertEquals(Helpers.calcSimilarity(ids1, ids2), actual, mode + ": '" + first + "' vs '" + second + "'");
+    }
+
+    private static String asChars(int[] ids) {
+        StringBuilder sb = new StringBuilder(ids.length);
+        for (int id : ids) {
+            sb.append((char)id);
+        }
+        return sb.toString();
+    }
+
+    private static int[] randomIds(Random random, int length, int numDistinct) {
+        int[] ids = new int[length];
+        for (int ii=0; ii<length; ii++) {
+            ids[ii] = random.nextInt(numDistinct);
+        }
+        return ids;
+    }
+
+    /**
+     * Source-like lines of a few words each, with varying indentation.
+     */
+    private static String randomSource(Random random, int numLines) {
+        StringBuilder sb = new StringBuilder();
+        for (int ii=0; ii<numLines; ii++) {
+            sb.append("    ".repeat(random.nextInt(3)));
+            int numWords = random.nextInt(6);
+            for (int jj=0; jj<numWords; jj++) {
+                sb.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextBoolean() ? " " : "");
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The same source with some lines dropped, duplicated or re-indented.
+     */
+    private static String editLines(Random random, String source) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : source.split("\n", -1)) {
+            int edit = random.nextInt(10);
+            if (edit == 0) {
+                continue;
+            }
+            if (edit == 1) {
+                sb.append(line).append('\n');
+            }
+            if (edit == 2) {
+                sb.append('\t');
+            }
+            sb.append(line).append('\n');
+        }
+        return sb.toString();
+    }
+}
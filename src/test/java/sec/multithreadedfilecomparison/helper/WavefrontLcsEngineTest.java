@@ -0,0 +1,105 @@
+package sec.multithreadedfilecomparison.helper;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import sec.multithreadedfilecomparison.model.PreparedContent;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The wavefront engine must give exactly the scores of the original DP,
+ * whether a pair fits in one tile or spans many. With minCells 0 every
+ * pair goes through the wavefront.
+ */
+public class WavefrontLcsEngineTest {
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private final WavefrontLcsEngine engine = new WavefrontLcsEngine(new BitParallelLcsEngine(), 0, pool);
+
+    @AfterEach
+    public void shutDownPool() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void matchesDpOnRandomPairs() {
+        for (String[] pair : TestContents.randomPairs(13L, 300, 300)) {
+            assertMatchesDp(pair[0], pair[1]);
+        }
+    }
+
+    @Test
+    public void emptyInputs() {
+        assertEquals(1.0, engine.calcSimilarity("", ""));
+        assertEquals(0.0, engine.calcSimilarity("", "abc"));
+        assertEquals(0.0, engine.calcSimilarity("abc", ""));
+    }
+
+    @Test
+    public void lengthsAroundWordBoundary() {
+        Random random = new Random(63);
+        for (int n : new int[] { 63, 64, 65 }) {
+            for (int m : new int[] { 1, 63, 64, 65, 129 }) {
+                String first = TestContents.random(random, n, TestContents.DNA);
+                assertMatchesDp(first, TestContents.random(random, m, TestContents.DNA));
+            }
+        }
+    }
+
+    @Test
+    public void nonAsciiCharacters() {
+        Random random = new Random(14);
+        for (int ii=0; ii<50; ii++) {
+            String first = TestContents.random(random, random.nextInt(300), TestContents.NON_ASCII);
+            assertMatchesDp(first, TestContents.edit(random, first, 0.2, TestContents.NON_ASCII));
+        }
+    }
+
+    @Test
+    public void matchesBitParallelAcrossManyTiles() {
+        // Several blocks of V and chunks of the other file, so tiles pass carries both ways
+        Random random = new Random(15);
+        SimilarityEngine reference = new BitParallelLcsEngine();
+        int blockChars = WavefrontLcsEngine.WORDS_PER_TILE * 64;
+        int[][] lengths = {
+                { blockChars - 1, WavefrontLcsEngine.CHARS_PER_TILE + 1 },
+                { blockChars + 1, 3 * WavefrontLcsEngine.CHARS_PER_TILE - 7 },
+                { 2 * blockChars + 100, 2 * blockChars + 100 },
+                { 3 * blockChars, 5000 }
+        };
+        for (int[] length : lengths) {
+            for (String alphabet : new String[] { TestContents.BINARY, TestContents.ASCII, TestContents.NON_ASCII }) {
+                String first = TestContents.random(random, length[0], alphabet);
+                String second = length[0] == length[1]
+                        ? TestContents.edit(random, first, 0.1, alphabet)
+                        : TestContents.random(random, length[1], alphabet);
+                assertEquals(reference.calcSimilarity(first, second),
+                        engine.calcSimilarity(new PreparedContent(first), new PreparedContent(second)));
+            }
+        }
+    }
+
+    @Test
+    public void smallPairsGoToSmallPairEngine() {
+        WavefrontLcsEngine thresholdEngine = new WavefrontLcsEngine(new LinearSpaceLcsEngine(), 10_000, pool);
+        assertMatchesDp(thresholdEngine, "abcabc", "bcab");
+        assertEquals(0, thresholdEngine.getParallelPairs());
+
+        Random random = new Random(16);
+        String first = TestContents.random(random, 200, TestContents.DNA);
+        assertMatchesDp(thresholdEngine, first, TestContents.edit(random, first, 0.2, TestContents.DNA));
+        assertEquals(1, thresholdEngine.getParallelPairs());
+    }
+
+    private void assertMatchesDp(String first, String second) {
+        assertMatchesDp(engine, first, second);
+    }
+
+    private static void assertMatchesDp(SimilarityEngine engine, String first, String second) {
+        assertEquals(Helpers.calcSimilarity(first, second), engine.calcSimilarity(first, second),
+                "'" + first + "' vs '" + second + "'");
+    }
+}